@@ -0,0 +1,637 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/** Micro-benchmarks for gitlet's storage and history code.
+ *  Usage: java gitlet.Benchmark NAME [ARGS...]
+ *  @author Yuan Sun
+ */
+public class Benchmark {
+
+    /** Bytes of input each codec is timed on. */
+    private static final int CORPUS_SIZE = 1 << 23;
+    /** Number of timed repetitions; the fastest one is reported. */
+    private static final int ROUNDS = 5;
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+    /** Bytes per megabyte. */
+    private static final double MB = 1 << 20;
+    /** Untracked files in the status benchmark's working directory. */
+    private static final int STATUS_FILES = 100000;
+    /** Most milliseconds a repeated status of STATUS_FILES files may
+     *  take, JVM start included. */
+    private static final long STATUS_BUDGET = 8000;
+    /** Lines in the files the merge benchmark merges. */
+    private static final int MERGE_LINES = 200000;
+    /** Lines of the file the blame benchmark blames. */
+    private static final int BLAME_LINES = 50000;
+    /** Commits in the history the blame benchmark walks. */
+    private static final int BLAME_REVISIONS = 10000;
+    /** The file changes in one of this many commits of that history. */
+    private static final int BLAME_CHANGE_EVERY = 10;
+    /** Files renamed in the rename benchmark. */
+    private static final int RENAME_FILES = 5000;
+    /** Commits the bisect benchmark chooses among. */
+    private static final int BISECT_COMMITS = 20000;
+    /** One in this many of those commits is a merge. */
+    private static final int BISECT_MERGE_EVERY = 20;
+    /** Lines in the files the diff benchmark compares. */
+    private static final int DIFF_LINES = 100000;
+    /** Most files the path-log benchmark looks up. */
+    private static final int PATH_SAMPLE = 50;
+
+    /** Run the benchmark named ARGS[0] with the rest of ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java gitlet.Benchmark NAME [ARGS...]");
+            return;
+        }
+        switch (args[0]) {
+        case "codecs":
+            codecs(args.length > 1 ? args[1] : ".");
+            break;
+        case "status":
+            status(args.length > 1 ? Integer.parseInt(args[1])
+                   : STATUS_FILES);
+            break;
+        case "merge":
+            merge(args.length > 1 ? Integer.parseInt(args[1])
+                  : MERGE_LINES);
+            break;
+        case "diff":
+            diff(args.length > 1 ? Integer.parseInt(args[1]) : DIFF_LINES);
+            break;
+        case "mergetree":
+            if (args.length != 3) {
+                System.out.println("Usage: mergetree OURS THEIRS");
+                return;
+            }
+            mergeTree(args[1], args[2]);
+            break;
+        case "renames":
+            renames(args.length > 1 ? Integer.parseInt(args[1])
+                    : RENAME_FILES);
+            break;
+        case "blame":
+            blame(args.length > 1 ? Integer.parseInt(args[1]) : BLAME_LINES,
+                  args.length > 2 ? Integer.parseInt(args[2])
+                  : BLAME_REVISIONS);
+            break;
+        case "bisect":
+            bisect(args.length > 1 ? Integer.parseInt(args[1])
+                   : BISECT_COMMITS);
+            break;
+        case "pathlog":
+            pathlog(args.length > 1 ? args[1] : ".");
+            break;
+        default:
+            System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Return about SIZE bytes of source text: the .java files in DIR
+     *  repeated, or generated lines if DIR has none. */
+    static byte[] corpus(String dir, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        boolean found = false;
+        while (names != null && out.size() < size) {
+            for (String name : names) {
+                if (name.endsWith(".java")) {
+                    byte[] text = Utils.readContents(Utils.join(dir, name));
+                    out.write(text, 0, text.length);
+                    found = true;
+                }
+            }
+            if (!found) {
+                break;
+            }
+        }
+        Random random = new Random(61);
+        while (out.size() < size) {
+            byte[] line = ("    int field" + random.nextInt(1000)
+                           + " = compute(" + random.nextInt(1 << 16)
+                           + ");\n").getBytes();
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the disk's sequential write rate in bytes per second,
+     *  measured by writing and syncing DATA to a file in DIR. */
+    static double diskRate(String dir, byte[] data) throws IOException {
+        File f = File.createTempFile("bench", ".tmp", new File(dir));
+        try {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i += 1) {
+                long start = System.nanoTime();
+                try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+                    out.setLength(0);
+                    out.write(data);
+                    out.getFD().sync();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            return data.length * NANOS / best;
+        } finally {
+            f.delete();
+        }
+    }
+
+    /** Compare each codec's speed and ratio on the sources in DIR, and
+     *  the time it would spend per object including disk transfer. */
+    static void codecs(String dir) throws IOException {
+        byte[] data = corpus(dir, CORPUS_SIZE);
+        double disk = diskRate(dir, data);
+        System.out.printf("corpus %.1f MB, disk %.0f MB/s%n",
+                          data.length / MB, disk / MB);
+        System.out.printf("%-8s %5s %7s %10s %10s %12s%n", "codec", "level",
+                          "ratio", "comp MB/s", "dec MB/s", "write+io ms");
+        for (Codec codec : Compression.codecs()) {
+            int[] levels = codec.name().equals("none") ? new int[] {0}
+                : new int[] {1, 6, 9};
+            for (int level : levels) {
+                byte[] packed = null;
+                long comp = Long.MAX_VALUE, dec = Long.MAX_VALUE;
+                for (int r = 0; r < ROUNDS; r += 1) {
+                    long start = System.nanoTime();
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    OutputStream out = Compression.wrap(bytes, codec, level);
+                    out.write(data);
+                    out.close();
+                    packed = bytes.toByteArray();
+                    comp = Math.min(comp, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    InputStream in = Compression.open(
+                        new ByteArrayInputStream(packed));
+                    in.readAllBytes();
+                    in.close();
+                    dec = Math.min(dec, System.nanoTime() - start);
+                }
+                double total = comp / NANOS + packed.length / disk;
+                System.out.printf("%-8s %5d %7.2f %10.0f %10.0f %12.1f%n",
+                                  codec.name(), level,
+                                  (double) data.length / packed.length,
+                                  data.length / MB / (comp / NANOS),
+                                  data.length / MB / (dec / NANOS),
+                                  total * 1000);
+            }
+        }
+    }
+
+    /** Time gitlet status in a new repository holding N untracked files,
+     *  run as a separate process as a user would run it.  The first run
+     *  also fills the log copy of the working directory; the second is
+     *  held to STATUS_BUDGET, scaled to N. */
+    static void status(int n) throws IOException {
+        File dir = Files.createTempDirectory("status").toFile();
+        try {
+            gitlet(dir, "init");
+            for (int i = 0; i < n; i += 1) {
+                Utils.writeContents(new File(dir, "file" + i + ".txt"),
+                                    "line " + i + "\n");
+            }
+            long first = gitlet(dir, "status");
+            long again = gitlet(dir, "status");
+            long budget = STATUS_BUDGET * n / STATUS_FILES;
+            System.out.printf("status of %d untracked files: first %d ms,"
+                              + " again %d ms (budget %d ms) %s%n", n,
+                              first, again, budget,
+                              again <= budget ? "ok" : "OVER BUDGET");
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    /** Time the line merge of two versions of an N-line file, edited
+     *  apart from each other every SPACING lines, for a few spacings;
+     *  the densest edits are also the largest diffs. */
+    static void merge(int n) throws IOException {
+        String text = source(n);
+        System.out.printf("%d lines, %.1f MB%n", n, text.length() / MB);
+        System.out.printf("%8s %10s %10s %10s%n", "spacing", "diff ms",
+                          "merge ms", "conflicts");
+        for (int spacing : new int[] {1000, 100, 10}) {
+            String ours = edit(text, spacing, 0);
+            String theirs = edit(text, spacing, spacing / 2);
+            long diff = Long.MAX_VALUE, merge = Long.MAX_VALUE;
+            boolean conflict = false;
+            for (int r = 0; r < 3; r += 1) {
+                long start = System.nanoTime();
+                Diff.Lines lines = new Diff.Lines();
+                Diff.match(lines.number(text), lines.number(ours));
+                diff = Math.min(diff, System.nanoTime() - start);
+                start = System.nanoTime();
+                StringWriter out = new StringWriter(text.length());
+                conflict = LineMerge.merge(text, ours, theirs, out);
+                merge = Math.min(merge, System.nanoTime() - start);
+            }
+            System.out.printf("%8d %10.1f %10.1f %10s%n", spacing,
+                              diff * 1000 / NANOS, merge * 1000 / NANOS,
+                              conflict ? "yes" : "no");
+        }
+    }
+
+    /** Time blame on a file of N lines with a history of REVISIONS
+     *  commits in a line, one in BLAME_CHANGE_EVERY of which changes a
+     *  line of it:  first with no cache, and then again after a few more
+     *  commits, starting from the first result.  The history is made up
+     *  in memory, so the times are those of the walk and the diffs. */
+    static void blame(int n, int revisions) {
+        Random random = new Random(61);
+        String[] base = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            base[i] = "    int field" + i + " = " + random.nextInt() + ";\n";
+        }
+        int total = revisions + BLAME_CHANGE_EVERY * 5;
+        int[] edited = new int[total];
+        for (int r = 0; r < total; r += 1) {
+            edited[r] = random.nextInt(n);
+        }
+        Blame.History history = new Blame.History() {
+            @Override
+            public String[] parents(String id) {
+                int r = Integer.parseInt(id);
+                return r == 0 ? new String[0]
+                    : new String[] {Integer.toString(r - 1)};
+            }
+
+            @Override
+            public int generation(String id) {
+                return Integer.parseInt(id) + 1;
+            }
+
+            @Override
+            public String blob(String id) {
+                int r = Integer.parseInt(id);
+                return Integer.toString(r - r % BLAME_CHANGE_EVERY);
+            }
+
+            @Override
+            public boolean sameAsParent(String id) {
+                return Integer.parseInt(id) % BLAME_CHANGE_EVERY != 0;
+            }
+
+            @Override
+            public String text(String id) {
+                String[] lines = base.clone();
+                for (int r = BLAME_CHANGE_EVERY; r <= Integer.parseInt(id);
+                     r += BLAME_CHANGE_EVERY) {
+                    lines[edited[r]] = "    // changed in " + r + "\n";
+                }
+                return String.join("", lines);
+            }
+        };
+        HashMap<String, String[]> known = new HashMap<>();
+        String head = Integer.toString(revisions - 1);
+        long start = System.nanoTime();
+        String[] first = new Blame(history, known).blame(head);
+        double cold = (System.nanoTime() - start) / NANOS;
+        known.put(head, first);
+        start = System.nanoTime();
+        String[] again = new Blame(history, known)
+            .blame(Integer.toString(total - 1));
+        double warm = (System.nanoTime() - start) / NANOS;
+        Set<String> origins = new TreeSet<>(Arrays.asList(again));
+        System.out.printf("%d lines, %d commits, %d changing the file%n",
+                          n, revisions, revisions / BLAME_CHANGE_EVERY);
+        System.out.printf("blame            %8.3f s%n", cold);
+        System.out.printf("%d commits later %8.3f s  %d origins%n",
+                          total - revisions, warm, origins.size());
+    }
+
+    /** Time the choice of the next commit to test by bisect among N
+     *  candidates, made up as a line of history off which one commit in
+     *  BISECT_MERGE_EVERY branches and is merged back, so that the
+     *  commits each reaches must be counted as sets. */
+    static void bisect(int n) {
+        int[][] parents = new int[n][];
+        int half = BISECT_MERGE_EVERY / 2;
+        for (int i = 0; i < n; i += 1) {
+            if (i == 0) {
+                parents[i] = new int[0];
+            } else if (i % BISECT_MERGE_EVERY == 0 && i > half) {
+                parents[i] = new int[] {i - 1, i - half};
+            } else if (i % BISECT_MERGE_EVERY == half + 1) {
+                parents[i] = new int[] {i - 2};
+            } else {
+                parents[i] = new int[] {i - 1};
+            }
+        }
+        boolean[] testable = new boolean[n];
+        Arrays.fill(testable, true);
+        double best = Double.MAX_VALUE;
+        int chosen = -1;
+        for (int r = 0; r < ROUNDS; r += 1) {
+            long start = System.nanoTime();
+            int[] reach = Bisect.reach(parents);
+            chosen = Bisect.midpoint(reach, testable);
+            best = Math.min(best, (System.nanoTime() - start) / NANOS);
+        }
+        System.out.printf("%d commits, %d merges: next commit %d in %.1f ms%n",
+                          n, n / BISECT_MERGE_EVERY, chosen, best * 1000);
+    }
+
+    /** Time rename detection among N deleted files and N added ones,
+     *  each added file a copy of a deleted one with a tenth of its lines
+     *  changed:  with the buckets of Renames, and by comparing the
+     *  sketches of every pair. */
+    static void renames(int n) {
+        Random random = new Random(61);
+        TreeMap<String, String> before = new TreeMap<>();
+        TreeMap<String, String> after = new TreeMap<>();
+        for (int f = 0; f < n; f += 1) {
+            StringBuilder a = new StringBuilder(), b = new StringBuilder();
+            for (int i = 0; i < 200; i += 1) {
+                String line = "    call(" + random.nextInt() + ");\n";
+                a.append(line);
+                b.append(random.nextInt(10) == 0 ? "    // " + line : line);
+            }
+            before.put("old" + f, a.toString());
+            after.put("new" + f, b.toString());
+        }
+        long start = System.nanoTime();
+        TreeMap<String, long[]> old = new TreeMap<>();
+        TreeMap<String, long[]> neu = new TreeMap<>();
+        for (String name : before.keySet()) {
+            old.put(name, Renames.sketch(before.get(name)));
+        }
+        for (String name : after.keySet()) {
+            neu.put(name, Renames.sketch(after.get(name)));
+        }
+        double sketching = (System.nanoTime() - start) / NANOS;
+        start = System.nanoTime();
+        int found = 0;
+        for (Map.Entry<String, String> kv
+                 : Renames.pair(old, neu).entrySet()) {
+            if (kv.getKey().substring(3).equals(kv.getValue().substring(3))) {
+                found += 1;
+            }
+        }
+        double bucketed = (System.nanoTime() - start) / NANOS;
+        start = System.nanoTime();
+        int alike = 0;
+        for (long[] a : old.values()) {
+            for (long[] b : neu.values()) {
+                if (Renames.similarity(a, b) >= Renames.MIN_SCORE) {
+                    alike += 1;
+                }
+            }
+        }
+        double allPairs = (System.nanoTime() - start) / NANOS;
+        System.out.printf("%d renames, sketched in %.3f s%n", n, sketching);
+        System.out.printf("buckets     %8.3f s  %d found%n", bucketed, found);
+        System.out.printf("all pairs   %8.3f s  %d pairs alike%n", allPairs,
+                          alike);
+    }
+
+    /** Time the merge of commits OURS and THEIRS of the repository in
+     *  the current directory, with files merged on one thread and in
+     *  parallel, and check that both give the same result. */
+    static void mergeTree(String ours, String theirs) {
+        if (!new File(".gitlet").isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Main.setUp();
+        CommitsTree tree = Main.getAllCommits();
+        Commit current = tree.resolve(ours);
+        Commit other = tree.resolve(theirs);
+        Commit split = tree.splitPoint(current, other);
+        if (split == null) {
+            System.out.println("The commits have no common ancestor.");
+            return;
+        }
+        MergeTree serial = null, parallel = null;
+        long one = Long.MAX_VALUE, many = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r += 1) {
+            long start = System.nanoTime();
+            serial = MergeTree.merge(split, current, other, false);
+            one = Math.min(one, System.nanoTime() - start);
+            start = System.nanoTime();
+            parallel = MergeTree.merge(split, current, other, true);
+            many = Math.min(many, System.nanoTime() - start);
+        }
+        System.out.printf("%d files, %d changed, %d in conflict%n",
+                          serial.tree().size(), serial.update().size()
+                          + serial.remove().size(),
+                          serial.conflicts().size());
+        System.out.printf("one thread  %8.1f ms%n", one * 1000 / NANOS);
+        System.out.printf("%2d threads  %8.1f ms%n",
+                          ForkJoinPool.getCommonPoolParallelism(),
+                          many * 1000 / NANOS);
+        if (!serial.update().equals(parallel.update())
+            || !serial.remove().equals(parallel.remove())
+            || !serial.conflicts().equals(parallel.conflicts())) {
+            System.out.println("Results differ.");
+        }
+    }
+
+    /** Time both diff algorithms on versions of an N-line file:  edited
+     *  every SPACING lines for a few spacings, and with a block of lines
+     *  moved, where the histogram algorithm should find the shorter
+     *  diff. */
+    static void diff(int n) {
+        String text = source(n);
+        System.out.printf("%d lines, %.1f MB%n", n, text.length() / MB);
+        System.out.printf("%-12s %12s %12s %12s %12s%n", "change",
+                          "myers ms", "myers edits", "hist ms", "hist edits");
+        String[] names = {"every 1000", "every 100", "every 10", "moved"};
+        int cut = text.length() / 3, paste = 2 * text.length() / 3;
+        cut = text.indexOf('\n', cut) + 1;
+        paste = text.indexOf('\n', paste) + 1;
+        String moved = text.substring(0, cut)
+            + text.substring(paste) + text.substring(cut, paste);
+        String[] changed = {edit(text, 1000, 0), edit(text, 100, 0),
+                            edit(text, 10, 0), moved};
+        for (int c = 0; c < names.length; c += 1) {
+            Diff.Lines lines = new Diff.Lines();
+            int[] a = lines.number(text), b = lines.number(changed[c]);
+            long myers = Long.MAX_VALUE, hist = Long.MAX_VALUE;
+            int[] m = null, h = null;
+            for (int r = 0; r < 3; r += 1) {
+                long start = System.nanoTime();
+                m = Diff.match(a, b);
+                myers = Math.min(myers, System.nanoTime() - start);
+                start = System.nanoTime();
+                h = Diff.histogram(a, b);
+                hist = Math.min(hist, System.nanoTime() - start);
+            }
+            System.out.printf("%-12s %12.1f %12d %12.1f %12d%n", names[c],
+                              myers * 1000 / NANOS, edits(m, b.length),
+                              hist * 1000 / NANOS, edits(h, b.length));
+        }
+    }
+
+    /** Return the lines deleted and inserted by MATCH, a matching onto
+     *  a sequence of N lines. */
+    private static int edits(int[] match, int n) {
+        int matched = 0;
+        for (int j : match) {
+            if (j >= 0) {
+                matched += 1;
+            }
+        }
+        return match.length - matched + n - matched;
+    }
+
+    /** Return N lines of generated source text, all different. */
+    private static String source(int n) {
+        Random random = new Random(61);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            text.append("    int field").append(i).append(" = compute(")
+                .append(random.nextInt(1 << 16)).append(");\n");
+        }
+        return text.toString();
+    }
+
+    /** Return TEXT with every SPACING-th line, starting at line OFFSET,
+     *  changed. */
+    private static String edit(String text, int spacing, int offset) {
+        StringBuilder result = new StringBuilder(text.length());
+        int line = 0;
+        for (int start = 0; start < text.length(); line += 1) {
+            int end = text.indexOf('\n', start) + 1;
+            if (line % spacing == offset) {
+                result.append("    // edited\n");
+            } else {
+                result.append(text, start, end);
+            }
+            start = end;
+        }
+        return result.toString();
+    }
+
+    /** Measure the changed-path filters of the commit graph on the
+     *  history of the repository in DIR:  for a sample of its files, the
+     *  share of commits a path-limited log skips without reading them,
+     *  how many it reads needlessly, and the time of a lookup with the
+     *  filters against reading every commit. */
+    static void pathlog(String dir) {
+        String gitDir = Paths.get(dir, ".gitlet").toString();
+        String commitDir = Paths.get(gitDir, ".commits").toString();
+        if (!new File(commitDir).isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        long start = System.nanoTime();
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.ids(commitDir)) {
+            commits.put(id, (Commit) Main.read(commitDir, id));
+        }
+        double readAll = (System.nanoTime() - start) / NANOS;
+        HashMap<String, Set<String>> changed = new HashMap<>();
+        TreeSet<String> names = new TreeSet<>();
+        for (Commit commit : commits.values()) {
+            Commit parent = commits.get(commit.getParent());
+            changed.put(commit.getUID(), CommitGraph.changed(
+                parent == null ? new HashMap<>() : parent.getAllBlobs(),
+                commit.getAllBlobs()));
+            names.addAll(commit.getAllBlobs().keySet());
+        }
+        List<String> sample = new ArrayList<>();
+        int step = Math.max(1, names.size() / PATH_SAMPLE);
+        int n = 0;
+        for (String name : names) {
+            if (n++ % step == 0 && sample.size() < PATH_SAMPLE) {
+                sample.add(name);
+            }
+        }
+
+        start = System.nanoTime();
+        CommitGraph graph = CommitGraph.open(gitDir, commitDir);
+        for (String id : commits.keySet()) {
+            graph.get(id);
+        }
+        graph.save();
+        double build = (System.nanoTime() - start) / NANOS;
+
+        long skipped = 0, read = 0, needless = 0;
+        start = System.nanoTime();
+        for (String name : sample) {
+            for (String id : commits.keySet()) {
+                CommitGraph.Node node = graph.get(id);
+                if (!node.mightChange(name)) {
+                    skipped += 1;
+                    continue;
+                }
+                read += 1;
+                Main.read(commitDir, id);
+                if (!node.parent().isEmpty()) {
+                    Main.read(commitDir, node.parent());
+                }
+                if (!changed.get(id).contains(name)) {
+                    needless += 1;
+                }
+            }
+        }
+        double lookups = (System.nanoTime() - start) / NANOS;
+        long tests = skipped + read;
+        long unchanged = skipped + needless;
+        System.out.printf("%d commits, %d files sampled, graph built in"
+                          + " %.0f ms%n", commits.size(), sample.size(),
+                          build * 1000);
+        System.out.printf("skipped %.1f%% of commits unread; %.2f%% of"
+                          + " unchanged commits read needlessly%n",
+                          100.0 * skipped / Math.max(1, tests),
+                          100.0 * needless / Math.max(1, unchanged));
+        System.out.printf("per file: %.2f ms with filters, %.2f ms reading"
+                          + " every commit%n",
+                          lookups * 1000 / Math.max(1, sample.size()),
+                          readAll * 1000);
+    }
+
+    /** Run gitlet with ARGS in directory DIR, discarding its output, and
+     *  return the milliseconds it took. */
+    private static long gitlet(File dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(Arrays.asList(args));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(dir)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return (long) ((System.nanoTime() - start) * 1000 / NANOS);
+    }
+
+    /** Delete F and everything under it. */
+    private static void deleteAll(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,324 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A search for the commit that introduced a change, by bisection.
+ *
+ *  The candidates are the commits reachable from the bad commit and
+ *  from no good one.  They are found in one walk back from the bad and
+ *  good commits (see CommitGraph.paint) that ends as soon as every
+ *  commit waiting is reachable from a good one.  Each candidate is then
+ *  counted with the candidates it reaches, following both parents of
+ *  merges; testing the commit reaching the closest to half of them next
+ *  halves the search whichever way it turns out.
+ *
+ *  Gitlet has no detached head, so the commits tested are reset onto
+ *  the branch that was current when the search started, and bisect
+ *  reset puts back the commit it had.  Only the files that differ
+ *  between one commit tested and the next are written.  The state of a
+ *  search is kept in the gitlet directory as FILE.
+ *  @author Yuan Sun
+ */
+class Bisect implements Serializable {
+
+    /** Kept fixed so that a search survives a rebuild. */
+    private static final long serialVersionUID = 4183607326549618107L;
+    /** Name of the state file. */
+    static final String FILE = "bisect";
+    /** Exit status of a bisect run script that cannot test a commit. */
+    static final int UNTESTABLE = 125;
+    /** Exit statuses from this on abort a bisect run. */
+    static final int ABORT = 128;
+    /** Mark of a commit reachable from the bad commit. */
+    private static final int BAD = 1;
+    /** Mark of a commit reachable from a good commit. */
+    private static final int GOOD = 2;
+
+    /** Branch current when the search started. */
+    private final String _branch;
+    /** Its head when the search started. */
+    private final String _original;
+    /** The bad commit, or null. */
+    private String _bad;
+    /** The good commits. */
+    private final TreeSet<String> _good = new TreeSet<>();
+    /** The commits that cannot be tested. */
+    private final TreeSet<String> _skipped = new TreeSet<>();
+
+    /** A search started on BRANCH, whose head is ORIGINAL. */
+    private Bisect(String branch, String original) {
+        _branch = branch;
+        _original = original;
+    }
+
+    /** bisect start [BAD [GOOD...]], with the commits given as REVS. */
+    static void start(List<String> revs) {
+        if (stateFile().isFile()) {
+            System.out.println("A bisect is already in progress.");
+            System.exit(0);
+        }
+        CommitsTree tree = Main.getAllCommits();
+        Bisect state = new Bisect(tree.getCurrentBranch(),
+                                  tree.getCurrentCommit().getUID());
+        for (int i = 0; i < revs.size(); i += 1) {
+            String id = tree.resolve(revs.get(i)).getUID();
+            if (i == 0) {
+                state._bad = id;
+            } else {
+                state._good.add(id);
+            }
+        }
+        state.save();
+        state.next();
+    }
+
+    /** bisect KIND [REV...], where KIND is good, bad or skip and REVS
+     *  are the commits marked, the current head if there are none. */
+    static void mark(String kind, List<String> revs) {
+        Bisect state = load();
+        CommitsTree tree = Main.getAllCommits();
+        if (revs.isEmpty()) {
+            revs = Arrays.asList(tree.getCurrentCommit().getUID());
+        }
+        if (kind.equals("bad") && revs.size() > 1) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        for (String rev : revs) {
+            String id = tree.resolve(rev).getUID();
+            if (kind.equals("bad")) {
+                state._bad = id;
+            } else if (kind.equals("good")) {
+                state._good.add(id);
+            } else {
+                state._skipped.add(id);
+            }
+        }
+        state.save();
+        state.next();
+    }
+
+    /** bisect run SCRIPT [ARGS...], given as COMMAND:  test each commit
+     *  chosen by running COMMAND in the working directory, marking it
+     *  good if it exits with 0, untestable if with UNTESTABLE and bad if
+     *  with any other status below ABORT, until the first bad commit is
+     *  found. */
+    static void run(List<String> command) {
+        Bisect state = load();
+        if (state._bad == null || state._good.isEmpty()) {
+            System.out.println("Mark a bad and a good commit first.");
+            System.exit(0);
+        }
+        CommitsTree tree = Main.getAllCommits();
+        while (true) {
+            Main.saveState();
+            int status;
+            try {
+                Process process = new ProcessBuilder(command)
+                    .directory(new File(Main.getWorkingDir()))
+                    .inheritIO().start();
+                status = process.waitFor();
+            } catch (IOException | InterruptedException e) {
+                System.out.println("bisect run failed: cannot run "
+                                   + command.get(0));
+                return;
+            }
+            if (status < 0 || status >= ABORT) {
+                System.out.println("bisect run failed: exit status "
+                                   + status + " from " + command.get(0));
+                return;
+            }
+            String id = tree.getCurrentCommit().getUID();
+            if (status == 0) {
+                state._good.add(id);
+            } else if (status == UNTESTABLE) {
+                state._skipped.add(id);
+            } else {
+                state._bad = id;
+            }
+            state.save();
+            if (state.next()) {
+                return;
+            }
+        }
+    }
+
+    /** bisect reset:  end the search, putting back the branch and head
+     *  it started on. */
+    static void reset() {
+        Bisect state = load();
+        CommitsTree tree = Main.getAllCommits();
+        if (!tree.getCurrentBranch().equals(state._branch)) {
+            tree.checkoutBranch(state._branch);
+        }
+        tree.reset(state._original);
+        stateFile().delete();
+    }
+
+    /** Choose the next commit to test and reset onto it, or report the
+     *  first bad commit.  Return true iff the search is over, or cannot
+     *  go on until a bad and a good commit are marked. */
+    private boolean next() {
+        if (_bad == null || _good.isEmpty()) {
+            return true;
+        }
+        CommitGraph graph = CommitGraph.open();
+        List<String> candidates = candidates(graph);
+        graph.save();
+        if (candidates.isEmpty()) {
+            System.out.println("The bad commit is an ancestor of a good"
+                               + " commit.");
+            return true;
+        }
+        HashMap<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i += 1) {
+            index.put(candidates.get(i), i);
+        }
+        int[][] parents = new int[candidates.size()][];
+        boolean[] testable = new boolean[candidates.size()];
+        for (int i = 0; i < parents.length; i += 1) {
+            CommitGraph.Node node = graph.get(candidates.get(i));
+            List<Integer> within = new ArrayList<>(2);
+            for (String p : new String[] {node.parent(),
+                                          node.secondParent()}) {
+                if (index.containsKey(p)) {
+                    within.add(index.get(p));
+                }
+            }
+            parents[i] = within.stream().mapToInt(x -> x).toArray();
+            testable[i] = !candidates.get(i).equals(_bad)
+                && !_skipped.contains(candidates.get(i));
+        }
+        int n = candidates.size();
+        int[] reach = reach(parents);
+        int best = midpoint(reach, testable);
+        PrintWriter out = Main.output();
+        if (best < 0) {
+            if (n == 1) {
+                out.println(_bad + " is the first bad commit");
+                CommitsTree.writeLog(out, read(_bad));
+            } else {
+                out.println("There are only skipped commits left to test.");
+                out.println("The first bad commit could be any of:");
+                for (String id : candidates) {
+                    if (id.equals(_bad) || _skipped.contains(id)) {
+                        out.println(id);
+                    }
+                }
+            }
+            out.flush();
+            return true;
+        }
+        int left = Math.max(reach[best] - 1, n - reach[best] - 1);
+        out.printf("Bisecting: %d revisions left to test after this"
+                   + " (roughly %d steps)%n", left,
+                   32 - Integer.numberOfLeadingZeros(left));
+        String id = candidates.get(best);
+        out.println("[" + id + "] " + read(id).getMsg());
+        out.flush();
+        Main.getAllCommits().reset(id);
+        return false;
+    }
+
+    /** Return the commits of GRAPH reachable from _bad and from none of
+     *  _good, in order of generation number, lowest first. */
+    private List<String> candidates(CommitGraph graph) {
+        List<String> tips = new ArrayList<>();
+        tips.add(_bad);
+        tips.addAll(_good);
+        int[] marks = new int[tips.size()];
+        Arrays.fill(marks, GOOD);
+        marks[0] = BAD;
+        List<String> result = new ArrayList<>();
+        graph.paint(tips, marks, GOOD, (id, mark) -> {
+            if (mark == BAD) {
+                result.add(id);
+            }
+        });
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Return, for each of a set of commits whose candidate parents are
+     *  PARENTS, each earlier in the set than its children, the number of
+     *  commits of the set it reaches, itself included.  Without merges
+     *  each reaches what its one parent reaches and itself; otherwise the
+     *  commits reached are kept as bit sets. */
+    static int[] reach(int[][] parents) {
+        int n = parents.length;
+        int[] result = new int[n];
+        boolean merges = false;
+        for (int[] p : parents) {
+            merges |= p.length > 1;
+        }
+        if (!merges) {
+            for (int i = 0; i < n; i += 1) {
+                result[i] = 1 + (parents[i].length == 0
+                                 ? 0 : result[parents[i][0]]);
+            }
+            return result;
+        }
+        long[][] sets = new long[n][];
+        for (int i = 0; i < n; i += 1) {
+            sets[i] = new long[i / 64 + 1];
+            sets[i][i / 64] |= 1L << i;
+            for (int p : parents[i]) {
+                for (int w = 0; w < sets[p].length; w += 1) {
+                    sets[i][w] |= sets[p][w];
+                }
+            }
+            for (long word : sets[i]) {
+                result[i] += Long.bitCount(word);
+            }
+        }
+        return result;
+    }
+
+    /** Return the position of the commit among those counted in REACH,
+     *  and that are TESTABLE, whose test leaves the fewest commits to
+     *  search whichever way it turns out, or -1 if none is testable. */
+    static int midpoint(int[] reach, boolean[] testable) {
+        int n = reach.length, best = -1, bestScore = -1;
+        for (int i = 0; i < n; i += 1) {
+            int score = Math.min(reach[i], n - reach[i]);
+            if (testable[i] && score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Return commit ID. */
+    private static Commit read(String id) {
+        return (Commit) Main.read(Main.getCommitPath(), id);
+    }
+
+    /** Write this search to the state file. */
+    private void save() {
+        Main.write(Main.getGitPath(), FILE, this);
+    }
+
+    /** Return the search in progress, or exit if there is none. */
+    private static Bisect load() {
+        if (!stateFile().isFile()) {
+            System.out.println("No bisect in progress.");
+            System.exit(0);
+        }
+        return (Bisect) Main.read(Main.getGitPath(), FILE);
+    }
+
+    /** Return the state file. */
+    private static File stateFile() {
+        return Utils.join(Main.getGitPath(), FILE);
+    }
+}
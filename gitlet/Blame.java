@@ -0,0 +1,327 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** Blame:  the commit that last changed each line of a file.
+ *
+ *  The lines of the file as a commit has it are suspects of that
+ *  commit.  Commits are taken newest first, by generation number, so
+ *  that a commit is reached only after all of its children.  A commit
+ *  whose blob of the file is that of a parent passes all its suspects
+ *  to that parent without a diff; where the commit graph's filter says
+ *  the file is unchanged from the first parent, not even the commit is
+ *  read.  Otherwise the commit's version is diffed with each parent's,
+ *  the lines found in a parent are passed to it, and the lines left are
+ *  blamed on the commit.
+ *
+ *  The results for a file are cached in the gitlet directory under
+ *  blame, for up to CACHE_ENTRIES of the commits it was blamed in.  A
+ *  walk that reaches a cached commit takes the rest of its answer from
+ *  there, so that blaming the file again after a few commits diffs only
+ *  those.
+ *  @author Yuan Sun
+ */
+class Blame {
+
+    /** Name of the cache directory. */
+    static final String DIR = "blame";
+    /** Commits whose results are cached for each file. */
+    static final int CACHE_ENTRIES = 16;
+    /** Versions of the file kept read during a walk. */
+    private static final int TEXTS = 8;
+
+    /** What a walk needs to know of history and of one file. */
+    interface History {
+        /** Return the parents of commit ID. */
+        String[] parents(String id);
+
+        /** Return the generation number of commit ID. */
+        int generation(String id);
+
+        /** Return the blob ID of the file in commit ID, or null if it
+         *  does not have the file. */
+        String blob(String id);
+
+        /** Return true only if commit ID certainly has the file as its
+         *  first parent has it. */
+        boolean sameAsParent(String id);
+
+        /** Return the contents of blob ID. */
+        String text(String id);
+    }
+
+    /** Lines of a version of the file still to be blamed. */
+    private static final class Suspects {
+        /** Blob ID of the version. */
+        private final String _blob;
+        /** Line numbers in the version. */
+        private int[] _lines = new int[16];
+        /** Line numbers in the version being blamed, in step with
+         *  _lines. */
+        private int[] _finals = new int[16];
+        /** Number of suspects. */
+        private int _size;
+
+        /** No suspects yet in blob BLOB. */
+        Suspects(String blob) {
+            _blob = blob;
+        }
+
+        /** Add line LINE, which is line FIN of the version blamed. */
+        void add(int line, int fin) {
+            if (_size == _lines.length) {
+                _lines = Arrays.copyOf(_lines, 2 * _size);
+                _finals = Arrays.copyOf(_finals, 2 * _size);
+            }
+            _lines[_size] = line;
+            _finals[_size] = fin;
+            _size += 1;
+        }
+
+        /** Add all of OTHER, which is of the same blob. */
+        void addAll(Suspects other) {
+            for (int k = 0; k < other._size; k += 1) {
+                add(other._lines[k], other._finals[k]);
+            }
+        }
+    }
+
+    /** The history walked. */
+    private final History _history;
+    /** Blamed versions, by commit, as blame returns them. */
+    private final Map<String, String[]> _known;
+    /** The last few versions read, by blob ID. */
+    private final LinkedHashMap<String, String> _texts =
+        new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> e) {
+                return size() > TEXTS;
+            }
+        };
+
+    /** A walk over HISTORY, which may take the answer for a commit from
+     *  KNOWN. */
+    Blame(History history, Map<String, String[]> known) {
+        _history = history;
+        _known = known;
+    }
+
+    /** Return the commit that last changed each line of the file in
+     *  commit ID, or null if ID does not have the file. */
+    String[] blame(String id) {
+        String blob = _history.blob(id);
+        if (blob == null) {
+            return null;
+        }
+        String[] result = new String[Diff.Lines.count(text(blob))];
+        HashMap<String, Suspects> pending = new HashMap<>();
+        HashMap<String, Integer> generations = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(
+            Comparator.comparing((String c) -> -generations.get(c))
+            .thenComparing(c -> c));
+        Suspects all = new Suspects(blob);
+        for (int i = 0; i < result.length; i += 1) {
+            all.add(i, i);
+        }
+        pending.put(id, all);
+        generations.put(id, _history.generation(id));
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            String commit = queue.remove();
+            Suspects suspects = pending.remove(commit);
+            generations.remove(commit);
+            String[] known = _known.get(commit);
+            if (known != null) {
+                for (int k = 0; k < suspects._size; k += 1) {
+                    result[suspects._finals[k]] =
+                        known[suspects._lines[k]];
+                }
+                continue;
+            }
+            String[] parents = _history.parents(commit);
+            String[] blobs = new String[parents.length];
+            String same = null;
+            if (parents.length > 0 && _history.sameAsParent(commit)) {
+                same = parents[0];
+            }
+            for (int p = 0; same == null && p < parents.length; p += 1) {
+                blobs[p] = _history.blob(parents[p]);
+                if (suspects._blob.equals(blobs[p])) {
+                    same = parents[p];
+                }
+            }
+            if (same != null) {
+                pass(same, suspects, pending, generations, queue);
+                continue;
+            }
+            for (int p = 0; p < parents.length && suspects._size > 0;
+                 p += 1) {
+                if (blobs[p] != null) {
+                    suspects = split(suspects, parents[p], blobs[p],
+                                     pending, generations, queue);
+                }
+            }
+            for (int k = 0; k < suspects._size; k += 1) {
+                result[suspects._finals[k]] = commit;
+            }
+        }
+        return result;
+    }
+
+    /** Pass those of SUSPECTS found in BLOB, the version of PARENT, to
+     *  PARENT, adding it to PENDING, GENERATIONS and QUEUE if need be.
+     *  Return the suspects left. */
+    private Suspects split(Suspects suspects, String parent, String blob,
+                           HashMap<String, Suspects> pending,
+                           HashMap<String, Integer> generations,
+                           PriorityQueue<String> queue) {
+        int[] toParent = Diff.match(text(suspects._blob), text(blob));
+        Suspects passed = new Suspects(blob);
+        Suspects left = new Suspects(suspects._blob);
+        for (int k = 0; k < suspects._size; k += 1) {
+            int line = toParent[suspects._lines[k]];
+            if (line >= 0) {
+                passed.add(line, suspects._finals[k]);
+            } else {
+                left.add(suspects._lines[k], suspects._finals[k]);
+            }
+        }
+        if (passed._size > 0) {
+            pass(parent, passed, pending, generations, queue);
+        }
+        return left;
+    }
+
+    /** Make SUSPECTS suspects of commit PARENT as well as any it has in
+     *  PENDING, adding it to GENERATIONS and QUEUE if it is new. */
+    private void pass(String parent, Suspects suspects,
+                      HashMap<String, Suspects> pending,
+                      HashMap<String, Integer> generations,
+                      PriorityQueue<String> queue) {
+        Suspects old = pending.get(parent);
+        if (old != null) {
+            old.addAll(suspects);
+            return;
+        }
+        pending.put(parent, suspects);
+        generations.put(parent, _history.generation(parent));
+        queue.add(parent);
+    }
+
+    /** Return the contents of blob ID. */
+    private String text(String id) {
+        String result = _texts.get(id);
+        if (result == null) {
+            result = _history.text(id);
+            _texts.put(id, result);
+        }
+        return result;
+    }
+
+    /** Return the commit that last changed each line of file PATH in
+     *  commit ID of this repository, or null if ID does not have the
+     *  file.  The walk follows the commit graph, and its result is
+     *  cached. */
+    @SuppressWarnings("unchecked")
+    static String[] blame(String path, String id) {
+        File cacheFile = Utils.join(Main.getGitPath(), DIR,
+                                    Utils.sha1(path) + ".cache");
+        LinkedHashMap<String, String[]> cache = new LinkedHashMap<>();
+        if (cacheFile.isFile()) {
+            cache = (LinkedHashMap<String, String[]>) Main.read(
+                cacheFile.getParent(), cacheFile.getName());
+        }
+        String[] result = cache.get(id);
+        if (result != null) {
+            return result;
+        }
+        CommitGraph graph = CommitGraph.open();
+        result = new Blame(new Graphed(graph, path), cache).blame(id);
+        graph.save();
+        if (result != null) {
+            cache.put(id, result);
+            while (cache.size() > CACHE_ENTRIES) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+            Main.write(cacheFile.getParent(), cacheFile.getName(), cache);
+        }
+        return result;
+    }
+
+    /** Discard the blame cache of gitlet directory DIR. */
+    static void discard(String dir) {
+        File cache = Utils.join(dir, DIR);
+        List<String> names = Utils.plainFilenamesIn(cache);
+        if (names != null) {
+            for (String name : names) {
+                Utils.join(cache, name).delete();
+            }
+        }
+    }
+
+    /** The history of file PATH in this repository, as its commit graph
+     *  and commits tell it. */
+    private static final class Graphed implements History {
+        /** The commit graph. */
+        private final CommitGraph _graph;
+        /** The file. */
+        private final String _path;
+        /** Blob IDs of the file, by commit, as far as they have been
+         *  read; "" for a commit without the file. */
+        private final HashMap<String, String> _blobs = new HashMap<>();
+
+        /** The history of file PATH in GRAPH. */
+        Graphed(CommitGraph graph, String path) {
+            _graph = graph;
+            _path = path;
+        }
+
+        @Override
+        public String[] parents(String id) {
+            CommitGraph.Node node = _graph.get(id);
+            ArrayList<String> result = new ArrayList<>(2);
+            if (!node.parent().isEmpty()) {
+                result.add(node.parent());
+            }
+            if (!node.secondParent().isEmpty()) {
+                result.add(node.secondParent());
+            }
+            return result.toArray(new String[0]);
+        }
+
+        @Override
+        public int generation(String id) {
+            return _graph.get(id).generation();
+        }
+
+        @Override
+        public String blob(String id) {
+            String blob = _blobs.get(id);
+            if (blob == null) {
+                Commit commit = (Commit) Main.read(Main.getCommitPath(), id);
+                blob = commit.getAllBlobs().getOrDefault(_path, "");
+                _blobs.put(id, blob);
+            }
+            return blob.isEmpty() ? null : blob;
+        }
+
+        @Override
+        public boolean sameAsParent(String id) {
+            CommitGraph.Node node = _graph.get(id);
+            return !node.parent().isEmpty() && !node.mightChange(_path);
+        }
+
+        @Override
+        public String text(String id) {
+            return ((Blob) Main.read(Main.getBlobPath(), id)).getContents();
+        }
+    }
+}
@@ -1,44 +1,66 @@
 package gitlet;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 /** Blob class.
  * @author Yuan Sun
  */
 public class Blob implements Serializable {
-    /** fileName. */
-    private String _fileName;
-    /** UID for a blob. */
+    /** Kept fixed so blobs written by older versions stay readable. */
+    private static final long serialVersionUID = -5132892821347802713L;
+    /** UID for a blob: the SHA-1 of its contents alone, so files with
+     *  the same contents share a blob whatever their names.  The name
+     *  a blob is stored under is kept by the commit referencing it. */
     private String _UID;
-    /** contents of file. */
+    /** contents of file, or null if the file is stored as chunks. */
     private String _contents;
+    /** IDs of the chunks in .chunks making up a large file, in order.
+     *  Null for files stored inline. */
+    private ArrayList<String> _chunks;
 
     /** constructor of the blob.
-     * Given FILENAME, CONTENTS */
-    Blob(String fileName, String contents) {
-        _fileName = fileName;
-        _contents = contents;
-        String text = fileName + contents;
-        _UID = Utils.sha1(text);
+     * Given CONTENTS */
+    Blob(String contents) {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        _UID = Utils.sha1(bytes);
+        if (bytes.length >= Chunker.THRESHOLD) {
+            _chunks = Chunker.store(bytes, Main.getChunkPath());
+        } else {
+            _contents = contents;
+        }
     }
 
-    /** return UID of the blob. */
-    public String getUID() {
+    /** Recompute the UID from the contents, for blobs written when the
+     *  UID also covered the file name.  Return the new UID. */
+    String rehash() {
+        _UID = Utils.sha1(getContents().getBytes(StandardCharsets.UTF_8));
         return _UID;
     }
 
-    /** return FILENAME of the blob. */
-    public String getFileName() {
-        return _fileName;
+    /** return UID of the blob. */
+    public String getUID() {
+        return _UID;
     }
 
-    /** return CONTENTS of the blob. */
+    /** return CONTENTS of the blob, reassembling its chunks if needed. */
     public String getContents() {
+        if (_chunks != null) {
+            return new String(Chunker.assemble(_chunks, Main.getChunkPath()),
+                    StandardCharsets.UTF_8);
+        }
         return _contents;
     }
 
+    /** return the chunk IDs of the blob, or null if stored inline. */
+    public ArrayList<String> getChunks() {
+        return _chunks;
+    }
+
     /** set Contents to CONTENTS. */
     public void setContents(String contents) {
         _contents = contents;
+        _chunks = null;
     }
 }
 
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Content-defined chunking for large files, after FastCDC.
+ *  A rolling gear hash picks cut points from the bytes themselves,
+ *  so an edit only disturbs the chunks around it and every other
+ *  chunk keeps its ID across versions and across files.
+ *  @author Yuan Sun
+ */
+class Chunker {
+
+    /** Files at least this many bytes long are stored as chunks. */
+    static final int THRESHOLD = 1 << 20;
+    /** Smallest chunk the cutter will emit. */
+    static final int MIN_SIZE = 1 << 11;
+    /** Chunk size the cutter aims for. */
+    static final int AVG_SIZE = 1 << 13;
+    /** Largest chunk the cutter will emit. */
+    static final int MAX_SIZE = 1 << 16;
+
+    /** Mask used below AVG_SIZE: more bits, so cuts are rarer. */
+    private static final long MASK_S = 0x0003590703530000L;
+    /** Mask used past AVG_SIZE: fewer bits, so cuts come sooner. */
+    private static final long MASK_L = 0x0000d90003530000L;
+    /** Seed of the gear table; changing it changes every chunk ID. */
+    private static final long GEAR_SEED = 0x6769746c6574L;
+    /** Random value mixed into the hash for each byte value. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(GEAR_SEED);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Return the length of the chunk of DATA starting at START
+     *  and ending no later than END. */
+    static int cut(byte[] data, int start, int end) {
+        int n = end - start;
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        n = Math.min(n, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the end offsets of the chunks of DATA, in order. */
+    static List<Integer> cutPoints(byte[] data) {
+        List<Integer> result = new ArrayList<>();
+        int start = 0;
+        while (start < data.length) {
+            start += cut(data, start, data.length);
+            result.add(start);
+        }
+        return result;
+    }
+
+    /** Split DATA into chunks, write the ones DIR does not already
+     *  hold, and return the chunk IDs in order.  Chunks are stored
+     *  compressed; their IDs are the hashes of the raw bytes. */
+    static ArrayList<String> store(byte[] data, String dir) {
+        ArrayList<String> ids = new ArrayList<>();
+        int start = 0;
+        for (int end : cutPoints(data)) {
+            byte[] chunk = Arrays.copyOfRange(data, start, end);
+            String id = Utils.sha1(chunk);
+            if (!ObjectStore.contains(dir, id)) {
+                Utils.writeContents(ObjectStore.fileForWrite(dir, id),
+                                    Compression.compress(chunk));
+            }
+            ids.add(id);
+            start = end;
+        }
+        return ids;
+    }
+
+    /** Return the bytes of the chunks IDS in DIR, concatenated. */
+    static byte[] assemble(List<String> ids, String dir) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String id : ids) {
+            byte[] chunk = Compression.decompress(
+                    Utils.readContents(ObjectStore.file(dir, id)));
+            out.write(chunk, 0, chunk.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Copy the chunks IDS missing from TODIR over from FROMDIR. */
+    static void copyMissing(List<String> ids, String fromDir, String toDir) {
+        new File(toDir).mkdirs();
+        for (String id : ids) {
+            if (!ObjectStore.contains(toDir, id)) {
+                Utils.writeContents(ObjectStore.fileForWrite(toDir, id),
+                        Utils.readContents(ObjectStore.file(fromDir, id)));
+            }
+        }
+    }
+}
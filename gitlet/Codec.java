@@ -0,0 +1,26 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** A compression scheme for stored objects.  Every object file starts
+ *  with a two-byte header naming the codec that wrote it (see
+ *  Compression), so codecs can be changed without rewriting a repo.
+ *  @author Yuan Sun
+ */
+interface Codec {
+
+    /** Return the byte identifying this codec in object headers. */
+    int id();
+
+    /** Return the name used for this codec in .gitlet/config. */
+    String name();
+
+    /** Return a stream that compresses into OUT at LEVEL.  Closing the
+     *  returned stream finishes the data and closes OUT. */
+    OutputStream compress(OutputStream out, int level) throws IOException;
+
+    /** Return a stream that decompresses the data read from IN. */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -1,24 +1,35 @@
 package gitlet;
 
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
 
 /** commit class.
  * @author Yuan Sun
  * */
 public class Commit implements Serializable, Iterable<Commit> {
+    /** Format of commit times. */
+    static final String TIME_FORMAT = "E MMM dd HH:mm:ss yyyy Z";
+    /** Kept fixed so commits written by older versions stay readable. */
+    private static final long serialVersionUID = 7996889049524289330L;
     /** sha1 code for a commit. */
     private String _UID;
     /** parent for a commit. */
     private String _parent;
     /** second parent for a merge commit. */
     private String _secondParent;
-    /** commit time. */
+    /** commit time as formatted by older versions, or null. */
     private String _timeStamp;
+    /** commit time, in milliseconds since the epoch. */
+    private long _millis;
+    /** offset from UTC of the committer's zone, in milliseconds. */
+    private int _offset;
     /** commit msg. */
     private String _message;
     /** storing all blobs. */
@@ -35,8 +46,8 @@ public class Commit implements Serializable, Iterable<Commit> {
         _parent = parent;
         _secondParent = secondParent;
         _message = message;
-        _timeStamp = new SimpleDateFormat(
-                "E MMM dd HH:mm:ss yyyy Z").format(new Date());
+        _millis = System.currentTimeMillis();
+        _offset = TimeZone.getDefault().getOffset(_millis);
         if (!parent.equals("")) {
             Commit cur = (Commit) Main.read(Main.getCommitPath(), getParent());
             _allBlobs = (HashMap<String, String>) cur.getAllBlobs().clone();
@@ -56,11 +67,37 @@ public class Commit implements Serializable, Iterable<Commit> {
                 System.exit(0);
             }
         }
-        String text = _timeStamp + message;
+        _UID = computeUID();
+    }
+
+    /** Return the sha1 code of this commit's fields. */
+    private String computeUID() {
+        String text = getTime() + _message;
         text += _allBlobs;
-        text += parent;
-        text += secondParent;
-        _UID = Utils.sha1(text);
+        text += _parent;
+        text += _secondParent;
+        return Utils.sha1(text);
+    }
+
+    /** Replace the blob and parent IDs of this commit by their images
+     *  under BLOBIDS and COMMITIDS, where they have one, and recompute
+     *  the UID.  Return the new UID. */
+    String remap(HashMap<String, String> blobIds,
+                 HashMap<String, String> commitIds) {
+        for (Map.Entry<String, String> kv: _allBlobs.entrySet()) {
+            String id = blobIds.get(kv.getValue());
+            if (id != null) {
+                kv.setValue(id);
+            }
+        }
+        if (commitIds.containsKey(_parent)) {
+            _parent = commitIds.get(_parent);
+        }
+        if (commitIds.containsKey(_secondParent)) {
+            _secondParent = commitIds.get(_secondParent);
+        }
+        _UID = computeUID();
+        return _UID;
     }
 
     /** return _allblobs. */
@@ -73,9 +110,36 @@ public class Commit implements Serializable, Iterable<Commit> {
         return _UID;
     }
 
-    /** return time. */
+    /** Return the commit time as log shows it, in the committer's
+     *  zone. */
     public String getTime() {
-        return _timeStamp;
+        if (_timeStamp != null) {
+            return _timeStamp;
+        }
+        return getTime(TIME_FORMAT);
+    }
+
+    /** Return the commit time formatted by PATTERN, in the committer's
+     *  zone, or the local zone for commits by older versions. */
+    String getTime(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        if (_timeStamp == null) {
+            format.setTimeZone(new SimpleTimeZone(_offset, ""));
+        }
+        return format.format(new Date(getMillis()));
+    }
+
+    /** Return the commit time in milliseconds since the epoch. */
+    public long getMillis() {
+        if (_timeStamp == null) {
+            return _millis;
+        }
+        try {
+            return new SimpleDateFormat(TIME_FORMAT).parse(_timeStamp)
+                .getTime();
+        } catch (ParseException excp) {
+            throw Utils.error("Bad commit time: %s", _timeStamp);
+        }
     }
 
     /** return parent. */
@@ -0,0 +1,516 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/** The shape of a repository's history without its contents:  for each
+ *  commit, its parents, generation number and time, and a Bloom filter
+ *  over the files it changed from its first parent.  History walks that
+ *  only follow parents, or that look for the commits touching a file,
+ *  read this instead of deserializing every commit.
+ *
+ *  The graph is kept in a gitlet directory as commit-graph, read through
+ *  a memory map.  It is built from the commits on first use, and again
+ *  if the file cannot be read; commits made later are added as walks
+ *  reach them and written out by save.
+ *  The file holds
+ *      int    MAGIC
+ *      int    number of commits
+ *      each commit, in ID order:
+ *          20     commit ID
+ *          20     first parent, or zeros
+ *          20     second parent, or zeros
+ *          int    generation:  1 for a root, else 1 + that of its
+ *                 highest parent
+ *          long   commit time, in milliseconds since the epoch
+ *          int    position of its filter among the filters
+ *          int    bytes of its filter
+ *      the filters
+ *  A commit that changed more than MAX_PATHS files gets the one-byte
+ *  filter 0xff, which every file passes.
+ *  @author Yuan Sun
+ */
+class CommitGraph {
+
+    /** Name of the graph file. */
+    static final String FILE = "commit-graph";
+    /** Bits of filter per changed file. */
+    static final int BITS_PER_PATH = 10;
+    /** Number of hash functions. */
+    static final int HASHES = 7;
+    /** Most changed files a commit's filter is made for. */
+    static final int MAX_PATHS = 512;
+    /** First int of a graph file. */
+    private static final int MAGIC = 0x47475048;
+    /** Bytes of the file header. */
+    private static final int HEADER = 8;
+    /** Bytes of a binary object ID. */
+    private static final int ID_BYTES = 20;
+    /** Bytes of a commit's entry. */
+    private static final int ENTRY = 3 * ID_BYTES + 4 + 8 + 4 + 4;
+
+    /** Open graphs, by gitlet directory. */
+    private static final HashMap<String, CommitGraph> OPEN =
+        new HashMap<>();
+
+    /** The gitlet directory the graph belongs to. */
+    private final String _dir;
+    /** The directory of its commits. */
+    private final String _commitDir;
+    /** The mapped graph file, or null before it is first written. */
+    private ByteBuffer _map;
+    /** Number of commits in _map. */
+    private int _count;
+    /** Commits added since the file was written, by ID. */
+    private final TreeMap<String, Node> _added = new TreeMap<>();
+
+    /** A commit in the graph. */
+    static final class Node {
+        /** Commit ID. */
+        private final String _id;
+        /** First parent, or "". */
+        private final String _parent;
+        /** Second parent, or "". */
+        private final String _secondParent;
+        /** Generation number. */
+        private final int _generation;
+        /** Commit time, in milliseconds since the epoch. */
+        private final long _millis;
+        /** Bloom filter over the files changed from the first parent. */
+        private final byte[] _filter;
+
+        /** The commit ID with parents PARENT and SECONDPARENT, generation
+         *  number GENERATION, made at MILLIS and having FILTER. */
+        Node(String id, String parent, String secondParent, int generation,
+             long millis, byte[] filter) {
+            _id = id;
+            _parent = parent;
+            _secondParent = secondParent;
+            _generation = generation;
+            _millis = millis;
+            _filter = filter;
+        }
+
+        /** Return the commit ID. */
+        String id() {
+            return _id;
+        }
+
+        /** Return the first parent, or "". */
+        String parent() {
+            return _parent;
+        }
+
+        /** Return the second parent, or "". */
+        String secondParent() {
+            return _secondParent;
+        }
+
+        /** Return the generation number. */
+        int generation() {
+            return _generation;
+        }
+
+        /** Return the commit time, in milliseconds since the epoch. */
+        long millis() {
+            return _millis;
+        }
+
+        /** Return false if this commit certainly left file NAME as its
+         *  first parent had it. */
+        boolean mightChange(String name) {
+            long bits = _filter.length * 8L;
+            if (bits == 0) {
+                return false;
+            }
+            String hash = Utils.sha1(name);
+            long h1 = hash1(hash), h2 = hash2(hash);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                if ((_filter[(int) (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** The graph of gitlet directory DIR whose commits are in COMMITDIR,
+     *  not read yet. */
+    private CommitGraph(String dir, String commitDir) {
+        _dir = dir;
+        _commitDir = commitDir;
+    }
+
+    /** Return the commit graph of gitlet directory DIR, whose commits are
+     *  in COMMITDIR, building it if there is none or it cannot be
+     *  read. */
+    static CommitGraph open(String dir, String commitDir) {
+        CommitGraph graph = OPEN.get(dir);
+        if (graph != null) {
+            return graph;
+        }
+        graph = new CommitGraph(dir, commitDir);
+        boolean mapped = false;
+        if (Utils.join(dir, FILE).isFile()) {
+            try {
+                graph.map();
+                mapped = true;
+            } catch (GitletException excp) {
+                graph = new CommitGraph(dir, commitDir);
+            }
+        }
+        if (!mapped) {
+            HashMap<String, Commit> commits = new HashMap<>();
+            for (String id : ObjectStore.ids(commitDir)) {
+                commits.put(id, (Commit) Main.read(commitDir, id));
+            }
+            for (String id : Migration.parentsFirst(commits)) {
+                graph.add(commits.get(id), commits);
+            }
+            graph.save();
+        }
+        OPEN.put(dir, graph);
+        return graph;
+    }
+
+    /** Return the commit graph of this repository. */
+    static CommitGraph open() {
+        return open(Main.getGitPath(), Main.getCommitPath());
+    }
+
+    /** Discard the commit graph of gitlet directory DIR, to be built
+     *  again when next used. */
+    static void discard(String dir) {
+        OPEN.remove(dir);
+        Utils.join(dir, FILE).delete();
+    }
+
+    /** Return the node of commit ID, adding it, and any of its ancestors
+     *  missing from the graph, if need be. */
+    Node get(String id) {
+        Node node = find(id);
+        if (node != null) {
+            return node;
+        }
+        ArrayDeque<String> todo = new ArrayDeque<>();
+        HashMap<String, Commit> commits = new HashMap<>();
+        todo.push(id);
+        while (!todo.isEmpty()) {
+            String next = todo.peek();
+            Commit commit = commits.get(next);
+            if (commit == null) {
+                commit = (Commit) Main.read(_commitDir, next);
+                commits.put(next, commit);
+            }
+            boolean ready = true;
+            for (String parent : new String[] {commit.getParent(),
+                                               commit.getSecondParent()}) {
+                if (!parent.isEmpty() && find(parent) == null) {
+                    todo.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                todo.pop();
+                if (find(next) == null) {
+                    add(commit, commits);
+                }
+            }
+        }
+        return find(id);
+    }
+
+    /** Receives the commits a paint reaches. */
+    interface Painter {
+        /** Called for commit ID with MARKS, the union of the marks of
+         *  the tips it is reachable from. */
+        void reached(String id, int marks);
+    }
+
+    /** Walk back from each of commits TIPS, marked with the bits in
+     *  MARKS in step with them, calling PAINTER on each commit reached
+     *  with the marks of the tips it is reachable from.  Commits are
+     *  taken newest first by generation number, so that a commit's
+     *  marks are all known when it is reached, and the walk ends once
+     *  every commit waiting has all the bits of STOP:  their ancestors
+     *  would have them too.  Return the newest commit still waiting
+     *  then, or null if there is none. */
+    String paint(List<String> tips, int[] marks, int stop,
+                 Painter painter) {
+        HashMap<String, Integer> painted = new HashMap<>();
+        PriorityQueue<Node> queue = new PriorityQueue<>(
+            Comparator.comparingInt((Node n) -> -n._generation)
+            .thenComparing(n -> n._id));
+        int live = 0;
+        for (int k = 0; k < tips.size(); k += 1) {
+            live += paint(tips.get(k), marks[k], stop, painted, queue);
+        }
+        while (live > 0) {
+            Node node = queue.remove();
+            int mark = painted.get(node._id);
+            if ((mark & stop) != stop) {
+                live -= 1;
+            }
+            painter.reached(node._id, mark);
+            for (String parent : new String[] {node._parent,
+                                               node._secondParent}) {
+                if (!parent.isEmpty()) {
+                    live += paint(parent, mark, stop, painted, queue);
+                }
+            }
+        }
+        return queue.isEmpty() ? null : queue.peek()._id;
+    }
+
+    /** Add MARK to the marks of commit ID in PAINTED, putting it in QUEUE
+     *  if it is new.  Return the change this makes in the number of
+     *  commits in QUEUE without all the bits of STOP. */
+    private int paint(String id, int mark, int stop,
+                      HashMap<String, Integer> painted,
+                      PriorityQueue<Node> queue) {
+        Integer old = painted.get(id);
+        if (old == null) {
+            painted.put(id, mark);
+            queue.add(get(id));
+            return (mark & stop) == stop ? 0 : 1;
+        }
+        painted.put(id, old | mark);
+        return (old & stop) != stop && ((old | mark) & stop) == stop
+            ? -1 : 0;
+    }
+
+    /** Write the commits added since the graph was read to its file. */
+    void save() {
+        if (_added.isEmpty() && _map != null) {
+            return;
+        }
+        List<Node> nodes = new ArrayList<>(_count + _added.size());
+        int i = 0;
+        for (Node added : _added.values()) {
+            while (i < _count && id(i).compareTo(added._id) < 0) {
+                nodes.add(node(i));
+                i += 1;
+            }
+            nodes.add(added);
+        }
+        for (; i < _count; i += 1) {
+            nodes.add(node(i));
+        }
+        write(nodes);
+        _added.clear();
+        map();
+    }
+
+    /** Return the node of commit ID, or null if it is not in the graph. */
+    private Node find(String id) {
+        Node added = _added.get(id);
+        if (added != null) {
+            return added;
+        }
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = id(mid).compareTo(id);
+            if (cmp == 0) {
+                return node(mid);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return null;
+    }
+
+    /** Add COMMIT, whose parents are in the graph, reading its first
+     *  parent from COMMITS if it is there. */
+    private void add(Commit commit, Map<String, Commit> commits) {
+        Map<String, String> base = new HashMap<>();
+        int generation = 1;
+        for (String parent : new String[] {commit.getParent(),
+                                           commit.getSecondParent()}) {
+            if (!parent.isEmpty()) {
+                generation = Math.max(generation,
+                                      find(parent)._generation + 1);
+            }
+        }
+        if (!commit.getParent().isEmpty()) {
+            Commit parent = commits.get(commit.getParent());
+            if (parent == null) {
+                parent = (Commit) Main.read(_commitDir, commit.getParent());
+            }
+            base = parent.getAllBlobs();
+        }
+        _added.put(commit.getUID(),
+                   new Node(commit.getUID(), commit.getParent(),
+                            commit.getSecondParent(), generation,
+                            commit.getMillis(),
+                            filter(changed(base, commit.getAllBlobs()))));
+    }
+
+    /** Return the names of the files whose blobs differ between BEFORE
+     *  and AFTER. */
+    static HashSet<String> changed(Map<String, String> before,
+                                   Map<String, String> after) {
+        HashSet<String> result = new HashSet<>();
+        for (Map.Entry<String, String> kv : after.entrySet()) {
+            if (!kv.getValue().equals(before.get(kv.getKey()))) {
+                result.add(kv.getKey());
+            }
+        }
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Return a Bloom filter over NAMES. */
+    static byte[] filter(HashSet<String> names) {
+        if (names.size() > MAX_PATHS) {
+            return new byte[] {(byte) 0xff};
+        }
+        int bytes = (names.size() * BITS_PER_PATH + 7) / 8;
+        byte[] filter = new byte[bytes];
+        long bits = bytes * 8L;
+        for (String name : names) {
+            String hash = Utils.sha1(name);
+            long h1 = hash1(hash), h2 = hash2(hash);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                filter[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            }
+        }
+        return filter;
+    }
+
+    /** Return the ID of commit I of the file. */
+    private String id(int i) {
+        byte[] id = new byte[ID_BYTES];
+        ByteBuffer buf = _map.duplicate();
+        buf.position(HEADER + i * ENTRY);
+        buf.get(id);
+        return Pack.toHex(id);
+    }
+
+    /** Return the node of commit I of the file. */
+    private Node node(int i) {
+        ByteBuffer buf = _map.duplicate();
+        buf.position(HEADER + i * ENTRY);
+        String id = readId(buf);
+        String parent = readId(buf);
+        String secondParent = readId(buf);
+        int generation = buf.getInt();
+        long millis = buf.getLong();
+        int start = buf.getInt();
+        byte[] filter = new byte[buf.getInt()];
+        buf.position(HEADER + _count * ENTRY + start);
+        buf.get(filter);
+        return new Node(id, parent, secondParent, generation, millis,
+                        filter);
+    }
+
+    /** Map the graph file. */
+    private void map() {
+        try (RandomAccessFile file = new RandomAccessFile(
+                 Utils.join(_dir, FILE), "r")) {
+            MappedByteBuffer map = file.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (file.length() < HEADER || map.getInt(0) != MAGIC
+                || map.getInt(4) < 0
+                || file.length() < HEADER + (long) map.getInt(4) * ENTRY) {
+                throw Utils.error("Commit graph is corrupt.");
+            }
+            int count = map.getInt(4);
+            if (count > 0) {
+                int last = HEADER + count * ENTRY - 8;
+                if (file.length() < HEADER + (long) count * ENTRY
+                    + map.getInt(last) + map.getInt(last + 4)) {
+                    throw Utils.error("Commit graph is corrupt.");
+                }
+            }
+            _map = map;
+            _count = count;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commit graph.");
+        }
+    }
+
+    /** Write the graph file anew with NODES, which are in ID order. */
+    private void write(List<Node> nodes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(nodes.size());
+            int start = 0;
+            for (Node node : nodes) {
+                out.write(idBytes(node._id));
+                out.write(idBytes(node._parent));
+                out.write(idBytes(node._secondParent));
+                out.writeInt(node._generation);
+                out.writeLong(node._millis);
+                out.writeInt(start);
+                out.writeInt(node._filter.length);
+                start += node._filter.length;
+            }
+            for (Node node : nodes) {
+                out.write(node._filter);
+            }
+            File tmp = File.createTempFile("graph", ".tmp", new File(_dir));
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Files.move(tmp.toPath(), Utils.join(_dir, FILE).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the binary form of ID, or zeros if it is empty. */
+    private static byte[] idBytes(String id) {
+        return id.isEmpty() ? new byte[ID_BYTES] : Pack.fromHex(id);
+    }
+
+    /** Read a binary ID from BUF; return it in hex, or "" if zero. */
+    private static String readId(ByteBuffer buf) {
+        byte[] id = new byte[ID_BYTES];
+        buf.get(id);
+        for (byte b : id) {
+            if (b != 0) {
+                return Pack.toHex(id);
+            }
+        }
+        return "";
+    }
+
+    /** Return the first hash of HASH, a SHA-1 in hex; the i-th bit of a
+     *  filter is hash1 + i * hash2. */
+    private static long hash1(String hash) {
+        return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+    }
+
+    /** Return the second hash of HASH, which is odd. */
+    private static long hash2(String hash) {
+        return Long.parseUnsignedLong(hash.substring(16, 32), 16) | 1;
+    }
+}
@@ -1,21 +1,40 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.io.Serializable;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /** commitstree class.
  * @author Yuan Sun
  */
 public class CommitsTree implements Serializable {
+    /** Kept fixed so trees written by older versions stay readable. */
+    private static final long serialVersionUID = 7115257800427570416L;
+    /** Threads reading commits for global-log. */
+    static final int LOG_THREADS =
+        Math.min(4, Runtime.getRuntime().availableProcessors());
+    /** Most commits global-log reads ahead of the one it is writing. */
+    static final int LOG_WINDOW = 64;
+    /** Format of the commit times blame shows. */
+    static final String BLAME_TIME = "yyyy-MM-dd HH:mm:ss Z";
     /** storing all branches. */
     private HashMap<String, String> _allBranches;
     /** current branch name. */
@@ -56,12 +75,9 @@ public class CommitsTree implements Serializable {
                 remotePath, "commitsConfig.bin").toFile();
         CommitsTree remoteTrees = null;
         if (treeConfig.exists()) {
-            remoteTrees = Utils.readObject(
-                    treeConfig, CommitsTree.class);
+            remoteTrees = (CommitsTree) Main.read(
+                    remotePath, "commitsConfig.bin");
         }
-        File stageConfig = Paths.get(
-                remotePath, "stagingConfig.bin").toFile();
-        Staging remoteStage = Utils.readObject(stageConfig, Staging.class);
         HashMap<String, String> remoteBranches = remoteTrees.getAllBranches();
         String remoteHeadID = remoteBranches.get(branchName);
         if (remoteHeadID.equals(
@@ -75,8 +91,11 @@ public class CommitsTree implements Serializable {
             return;
         }
         remoteTrees.reset(getCurrentCommit().getUID());
-        Main.write(Main.getRemoteCommitsPath(remotePath),
+        String remoteCommits = Main.getRemoteCommitsPath(remotePath);
+        String remoteGit = Paths.get(remotePath, ".gitlet").toString();
+        Main.write(remoteCommits,
                 getCurrentCommit().getUID(), getCurrentCommit());
+        index(remoteGit, remoteCommits, getCurrentCommit());
         Iterator<Commit> currIter = getCurrentCommit().iterator();
 
         while (currIter.hasNext()) {
@@ -84,14 +103,13 @@ public class CommitsTree implements Serializable {
             if (next.getUID().equals(remoteHeadID)) {
                 break;
             }
-            Main.write(Main.getRemoteCommitsPath(remotePath),
-                    next.getUID(), next);
+            Main.write(remoteCommits, next.getUID(), next);
+            index(remoteGit, remoteCommits, next);
         }
         remoteTrees.getAllBranches().put(
                 branchName, getCurrentCommit().getUID());
         remoteTrees.reset(remoteTrees.getCurrentCommit().getUID());
         Main.write(remotePath, "commitsConfig.bin", remoteTrees);
-        Main.write(remotePath, "stagingConfig.bin", remoteStage);
     }
 
     /** fetch REMOTEPATH, REMOTENAME BRANCHNAME. */
@@ -132,21 +150,30 @@ public class CommitsTree implements Serializable {
     }
     /** write to commits given COMMIT, COMMITID. */
     public void writeToLocalCommits(Commit commit, String commitID) {
-        List<String> currentCommits = Utils.plainFilenamesIn(
-                Main.getCommitPath());
-        if (!currentCommits.contains(commitID)) {
+        if (!ObjectStore.contains(Main.getCommitPath(), commitID)) {
             Main.write(Main.getCommitPath(), commitID, commit);
+            index(Main.getGitPath(), Main.getCommitPath(), commit);
         }
     }
+    /** Enter COMMIT, just written to COMMITDIR, in the indexes of gitlet
+     *  directory DIR. */
+    static void index(String dir, String commitDir, Commit commit) {
+        MessageIndex.record(dir, commitDir, commit);
+        TimeIndex.record(dir, commitDir, commit);
+    }
+
     /** write to blobs given ALLBLOBS, REMOTEPATH. */
     public void writeToLocalBlobs(HashMap<String, String> allBlobs,
                                   String remotePath) {
-        List<String> currentBlobs = Utils.plainFilenamesIn(
-                Main.getBlobPath());
         for (Map.Entry<String, String> kv: allBlobs.entrySet()) {
-            if (!currentBlobs.contains(kv.getValue())) {
+            if (!ObjectStore.contains(Main.getBlobPath(), kv.getValue())) {
                 Blob blob = (Blob) Main.read(
                         Main.getRemoteBlobs(remotePath), kv.getValue());
+                if (blob.getChunks() != null) {
+                    Chunker.copyMissing(blob.getChunks(),
+                            Main.getRemoteChunks(remotePath),
+                            Main.getChunkPath());
+                }
                 Main.write(Main.getBlobPath(), kv.getValue(), blob);
             }
         }
@@ -160,20 +187,89 @@ public class CommitsTree implements Serializable {
         remoteTree.reset(currentHead.getUID());
     }
 
-    /** log. */
-    public void log() {
-        Commit c = getCurrentCommit();
-        Iterator<Commit> iterator = getCurrentCommit().iterator();
-        singleLog(getCurrentCommit());
-        while (iterator.hasNext()) {
-            Commit next = iterator.next();
-            if (!next.getSecondParent().equals("")) {
-                mergeLog(next);
-            } else {
-                singleLog(next);
+    /** log:  the first-parent history of the head, newest first,
+     *  skipping the first SKIP commits shown and showing at most LIMIT.
+     *  Only commits made from SINCE to UNTIL, in milliseconds since the
+     *  epoch, are shown; as commits are made after their parents, the
+     *  walk ends at the first commit older than SINCE.  Commits are read
+     *  one at a time as they are reached, and the walk also ends when
+     *  the output is closed. */
+    public void log(int skip, int limit, long since, long until) {
+        PrintWriter out = Main.output();
+        Commit commit = getCurrentCommit();
+        int shown = 0;
+        while (shown < limit && !out.checkError()) {
+            long time = commit.getMillis();
+            if (time < since) {
+                break;
+            }
+            if (time <= until) {
+                if (skip > 0) {
+                    skip -= 1;
+                } else {
+                    writeLog(out, commit);
+                    shown += 1;
+                }
+            }
+            if (commit.getParent().equals("")) {
+                break;
+            }
+            commit = (Commit) Main.read(Main.getCommitPath(),
+                                        commit.getParent());
+        }
+        out.flush();
+    }
+
+    /** log -- PATH:  as log with SKIP, LIMIT, SINCE and UNTIL, showing
+     *  only the commits that changed file PATH from their first parent.
+     *  The walk follows the commit graph, and reads only the commits
+     *  whose changed-path filter PATH passes. */
+    public void log(int skip, int limit, long since, long until,
+                    String path) {
+        PrintWriter out = Main.output();
+        CommitGraph graph = CommitGraph.open();
+        CommitGraph.Node node = graph.get(getCurrentCommit().getUID());
+        int shown = 0;
+        while (shown < limit && !out.checkError()) {
+            if (node.millis() < since) {
+                break;
+            }
+            Commit commit = null;
+            if (node.millis() <= until && node.mightChange(path)) {
+                commit = changedCommit(node, path);
+            }
+            if (commit != null) {
+                if (skip > 0) {
+                    skip -= 1;
+                } else {
+                    writeLog(out, commit);
+                    shown += 1;
+                }
+            }
+            if (node.parent().isEmpty()) {
+                break;
             }
+            node = graph.get(node.parent());
+        }
+        graph.save();
+        out.flush();
+    }
 
+    /** Return the commit of NODE if it changed file PATH from its first
+     *  parent, and otherwise null. */
+    static Commit changedCommit(CommitGraph.Node node, String path) {
+        Commit commit = (Commit) Main.read(Main.getCommitPath(), node.id());
+        String before = null;
+        if (!node.parent().isEmpty()) {
+            Commit parent = (Commit) Main.read(Main.getCommitPath(),
+                                               node.parent());
+            before = parent.getAllBlobs().get(path);
         }
+        String after = commit.getAllBlobs().get(path);
+        if (after == null ? before == null : after.equals(before)) {
+            return null;
+        }
+        return commit;
     }
 
     /** setCurrentCommit to be C. */
@@ -185,78 +281,96 @@ public class CommitsTree implements Serializable {
      * if ID does not exist in the commit path, return an empty string.
      */
     public String validateID(String id) {
-        ArrayList<Object> files = Main.readAll(Main.getCommitPath());
-        for (Object file: files) {
-            Commit commit = (Commit) file;
-            String fullID = commit.getUID();
-            if (fullID.substring(0, id.length()).equals(id)) {
-                return fullID;
-            }
+        for (String fullID: ObjectStore.idsWithPrefix(
+                 Main.getCommitPath(), id)) {
+            return fullID;
         }
         return "";
     }
 
-    /** print log for a merge COMMIT.
+    /** global-log:  each commit ever made, once, in ID order, stopping
+     *  after LIMIT of them or when the output is closed.  If SINCE or
+     *  UNTIL, in milliseconds since the epoch, is given, only commits
+     *  made from SINCE to UNTIL are shown, newest first, as found in the
+     *  time index.  Commits are read on LOG_THREADS threads, at most
+     *  LOG_WINDOW ahead of the one being written. */
+    public void globalLog(int limit, long since, long until) {
+        final String dir = Main.getCommitPath();
+        Iterator<String> ids;
+        if (since == Long.MIN_VALUE && until == Long.MAX_VALUE) {
+            ids = ObjectStore.ids(dir).iterator();
+        } else {
+            ids = TimeIndex.open().range(since, until).iterator();
+        }
+        PrintWriter out = Main.output();
+        ExecutorService pool = Executors.newFixedThreadPool(LOG_THREADS);
+        ArrayDeque<Future<Commit>> pending = new ArrayDeque<>();
+        try {
+            for (int n = 0; n < limit && !out.checkError(); n += 1) {
+                while (pending.size() < LOG_WINDOW && ids.hasNext()) {
+                    final String id = ids.next();
+                    pending.add(pool.submit(
+                        () -> (Commit) Main.read(dir, id)));
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                writeLog(out, pending.remove().get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw Utils.error("Cannot read commit: %s", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            out.flush();
+        }
+    }
+
+    /** Write COMMIT to OUT as log shows it.  A merge also shows the
+     *  first seven digits of its parents:
      *    ===
      *    commit 3e8bf1d794ca2e9ef8a4007275acf3751c7170ff
      *    Merge: 4975af1 2c1ead1
      *    Date: Sat Nov 11 12:30:00 2017 -0800
      *    Merged development into master.
      */
-    public void mergeLog(Commit commit) {
-        String separator = "===\n";
-        String uid = "commit " + commit.getUID() + "\n";
-        String merge = "Merge: " + commit.getParent() + " "
-                               + commit.getSecondParent() + "\n";
-        String date = "Date: " + commit.getTime() + "\n";
-        String msg = commit.getMsg() + "\n";
-        String complete = separator + uid + merge + date + msg;
-        System.out.println(complete);
-    }
-
-    /** helper function for global log.
-     * given a head COMMIT.
-     */
-    public void logCommit(Commit commit) {
-        Iterator<Commit> iterator = commit.iterator();
-        singleLog(commit);
-        while (iterator.hasNext()) {
-            Commit next = iterator.next();
-            singleLog(next);
-        }
-    }
-
-    /** global-log. */
-    public void globalLog() {
-        ArrayList<Object> allCommits = Main.readAll(Main.getCommitPath());
-        Set<Commit> toLog = new HashSet<>();
-        for (Object obj: allCommits) {
-            Commit commit = (Commit) obj;
-            toLog.add(commit);
-        }
-        for (Commit commit: toLog) {
-            logCommit(commit);
-        }
-    }
-
-    /** find MSG. */
-    public void findMsg(String msg) {
-        boolean flag = false;
-        List<String> fileNames = Utils.plainFilenamesIn(Main.getCommitPath());
-        for (String code: fileNames) {
-            Commit commit = (Commit) Main.read(Main.getCommitPath(), code);
-            String message = commit.getMsg();
-            if (message.equals(msg)) {
-                flag = true;
-                System.out.println(commit.getUID());
-            }
+    static void writeLog(PrintWriter out, Commit commit) {
+        out.println("===");
+        out.println("commit " + commit.getUID());
+        if (!commit.getSecondParent().equals("")) {
+            out.println("Merge: " + commit.getParent().substring(0, 7) + " "
+                        + commit.getSecondParent().substring(0, 7));
+        }
+        out.println("Date: " + commit.getTime());
+        out.println(commit.getMsg());
+        out.println();
+    }
+
+    /** find QUERY, matching whole messages if MODE is "", any message
+     *  with all the words of QUERY if it is "--token" and any message
+     *  containing QUERY if it is "--substring".  Answered from the
+     *  message index, so no commit is read. */
+    public void findMsg(String mode, String query) {
+        MessageIndex index = MessageIndex.open();
+        List<String> found;
+        if (mode.equals("--token")) {
+            found = index.token(query);
+        } else if (mode.equals("--substring")) {
+            found = index.substring(query);
+        } else {
+            found = index.exact(query);
         }
-        if (!flag) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
+            return;
+        }
+        PrintWriter out = Main.output();
+        for (String id : found) {
+            out.println(id);
         }
+        out.flush();
     }
 
-    /** Prints out status of gitlet.
+    /** Prints out status of gitlet to OUT; this part writes the branches.
      * === Branches ===
      * *master
      * other-branch
@@ -274,51 +388,106 @@ public class CommitsTree implements Serializable {
      *
      * === Untracked Files ===
      * random.stuff
+     *
+     * A branch with an upstream (see upstreams) is followed by how far
+     * it is ahead of and behind it, as in
+     * *master [origin/master: ahead 1, behind 2]
      */
-    public void status() {
-        String branchInfo = printBranches();
-        System.out.println(branchInfo);
-    }
-
-    /** Return sorted LIST. */
-    public String sort(ArrayList<String> list) {
-        for (int i = 0; i < list.size() - 1; i++) {
-            for (int j = i + 1; j < list.size(); j++) {
-                String file1 = list.get(i);
-                String file2 = list.get(j);
-                if (file1.compareTo(file2) > 0) {
-                    String temp = file2;
-                    list.set(j, file1);
-                    list.set(i, temp);
-                }
+    public void status(PrintWriter out) {
+        Tracking tracking = new Tracking();
+        out.println("=== Branches ===");
+        out.println("*" + _currentBranch + tracking.note(_currentBranch));
+        Set<String> branches = new TreeSet<>(getAllBranches().keySet());
+        branches.remove(_currentBranch);
+        for (String name : branches) {
+            out.println(name + tracking.note(name));
+        }
+        tracking.close();
+        out.println();
+    }
+
+    /** branch -v:  each branch, in order of name, with the current one
+     *  starred, the first seven digits of its head and, if it has an
+     *  upstream, how far it is ahead of and behind it. */
+    public void listBranches() {
+        Tracking tracking = new Tracking();
+        TreeSet<String> names = new TreeSet<>(_allBranches.keySet());
+        int width = 0;
+        for (String name : names) {
+            width = Math.max(width, name.length());
+        }
+        PrintWriter out = Main.output();
+        for (String name : names) {
+            out.printf("%s %-" + width + "s %s%s%n",
+                       name.equals(_currentBranch) ? "*" : " ", name,
+                       _allBranches.get(name).substring(0, 7),
+                       tracking.note(name));
+        }
+        tracking.close();
+        out.flush();
+    }
+
+    /** Return the remote-tracking branch each branch follows, by
+     *  branch name:  REMOTE/NAME for branch NAME, where REMOTE is the
+     *  setting branch.NAME.remote if there is one, and otherwise the
+     *  first remote, in order of name, from which a branch NAME has
+     *  been fetched. */
+    TreeMap<String, String> upstreams() {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (String ref : new TreeSet<>(_allBranches.keySet())) {
+            int slash = ref.indexOf('/');
+            if (slash < 0) {
+                continue;
+            }
+            String remote = ref.substring(0, slash);
+            String name = ref.substring(slash + 1);
+            String wanted = Config.get("branch." + name + ".remote", remote);
+            if (_allBranches.containsKey(name) && wanted.equals(remote)) {
+                result.putIfAbsent(name, ref);
             }
         }
-        String files = "";
-        for (String fileName: list) {
-            files += (fileName + "\n");
-        }
-        return files;
+        return result;
     }
 
-    /** Return branches string. */
-    public String printBranches() {
-        String header = "=== Branches ===" + "\n";
-        header += "*" + _currentBranch + "\n";
-        Set<String> branches = new HashSet<>(getAllBranches().keySet());
-        branches.remove(_currentBranch);
-        ArrayList<String> unsorted = new ArrayList<>(branches);
-        header += sort(unsorted);
-        return header;
-    }
+    /** The notes of how far branches are from their upstreams, with
+     *  the counts taken from the merge-base cache (see MergeBases). */
+    private final class Tracking {
+        /** Upstreams, by branch name. */
+        private final TreeMap<String, String> _upstreams = upstreams();
+        /** The merge-base cache, or null if it has not been opened. */
+        private MergeBases _bases;
+
+        /** Return " [UPSTREAM: ahead N, behind M]" for branch NAME,
+         *  leaving out the counts that are 0, or "" if NAME has no
+         *  upstream. */
+        String note(String name) {
+            String upstream = _upstreams.get(name);
+            if (upstream == null) {
+                return "";
+            }
+            if (_bases == null) {
+                _bases = MergeBases.open();
+            }
+            int[] counts = _bases.aheadBehind(_allBranches.get(name),
+                                              _allBranches.get(upstream));
+            List<String> parts = new ArrayList<>();
+            if (counts[0] > 0) {
+                parts.add("ahead " + counts[0]);
+            }
+            if (counts[1] > 0) {
+                parts.add("behind " + counts[1]);
+            }
+            return " [" + upstream + (parts.isEmpty() ? ""
+                                      : ": " + String.join(", ", parts))
+                + "]";
+        }
 
-    /** log COMMIT. */
-    public void singleLog(Commit commit) {
-        String separator = "===\n";
-        String uid = "commit " + commit.getUID() + "\n";
-        String date = "Date: " + commit.getTime() + "\n";
-        String msg = commit.getMsg() + "\n";
-        String complete = separator + uid + date + msg;
-        System.out.println(complete);
+        /** Save the cache if it was used. */
+        void close() {
+            if (_bases != null) {
+                _bases.save();
+            }
+        }
     }
 
     /** branch NAME. */
@@ -339,15 +508,13 @@ public class CommitsTree implements Serializable {
         Commit commit = new Commit(parentUID, secondParent, msg,
                 add, del);
         Main.write(Main.getCommitPath(), commit.getUID(), commit);
-        ArrayList<Object> tempFiles = Main.readAll(Main.getTempBlobPath());
-        for (Object file: tempFiles) {
-            Blob temp = (Blob) file;
-            File f = Utils.join(Main.getTempBlobPath(), temp.getUID());
-            Main.write(Main.getBlobPath(), temp.getUID(), temp);
-            if (!f.delete()) {
-                System.out.println("deletion failed.");
-                System.exit(0);
-            }
+        index(Main.getGitPath(), Main.getCommitPath(), commit);
+        List<String> staged = new ArrayList<>();
+        for (String id: ObjectStore.looseIds(Main.getTempBlobPath())) {
+            staged.add(id);
+        }
+        for (String id: staged) {
+            ObjectStore.promote(Main.getTempBlobPath(), Main.getBlobPath(), id);
         }
         _allBranches.put(_currentBranch, commit.getUID());
         commit = getCurrentCommit();
@@ -385,6 +552,11 @@ public class CommitsTree implements Serializable {
         }
     }
 
+    /** Return the name of the current branch. */
+    public String getCurrentBranch() {
+        return _currentBranch;
+    }
+
     /** return current commit of the branch (head commit). */
     public Commit getCurrentCommit() {
         String commitSHA1 = _allBranches.get(_currentBranch);
@@ -418,7 +590,8 @@ public class CommitsTree implements Serializable {
         }
     }
 
-    /** reset, given COMMITID. */
+    /** reset, given COMMITID.  As with checkout of a branch, only the
+     *  files that differ between the two commits are written. */
     public void reset(String commitID) {
         commitID = validateID(commitID);
         if (commitID.equals("")) {
@@ -426,116 +599,36 @@ public class CommitsTree implements Serializable {
             return;
         }
         Commit commit = (Commit) Main.read(Main.getCommitPath(), commitID);
-        HashMap<String, String> trackedFiles = commit.getAllBlobs();
+        HashMap<String, String> current = getCurrentCommit().getAllBlobs();
         removeIfNotTracked(commitID);
-        for (String fileName: trackedFiles.keySet()) {
-            checkoutCommit(commitID, fileName);
-        }
+        writeChanged(current, commit.getAllBlobs());
         _allBranches.put(_currentBranch, commitID);
         Main.getStaging().setBlobs(commit);
         Main.getStaging().clearAll();
         Main.getStaging().stagedAllTracked();
     }
 
-    /** Return the split point of commit CURRENT and OTHER.
-     *  remember to add the head commit of other as well.
-     */
+    /** Return the split point of commit CURRENT and OTHER:  their
+     *  newest common ancestor, or null if they have none.  Merge bases
+     *  are cached (see MergeBases), so that merging the same branches
+     *  again finds theirs without a walk. */
     public Commit splitPoint(Commit current, Commit other) {
-        Iterator<Commit> currentIter = getCurrentCommit().iterator();
-        Iterator<Commit> otherIter = other.iterator();
-        Iterator<Commit> secondIter = other.iterator();
-        Set<String> otherContainer = new HashSet<>();
-        Stack<Commit> list = new Stack<>();
-        Set<String> visited = new HashSet<>();
-        list.add(other);
-        while (!list.isEmpty()) {
-            Commit top = list.pop();
-            if (!visited.contains(top.getUID())) {
-                otherContainer.add(top.getUID());
-                visited.add(top.getUID());
-                if (!top.getParent().equals("")) {
-                    Commit parent = (Commit) Main.read(
-                            Main.getCommitPath(), top.getParent());
-                    list.add(parent);
-                }
-                if (!top.getSecondParent().equals("")) {
-                    Commit parent = (Commit) Main.read(
-                            Main.getCommitPath(), top.getSecondParent());
-                    list.add(parent);
-                }
-            }
-        }
-
-        Set<String> currContainer = new HashSet<>();
-        Stack<Commit> currList = new Stack<>();
-        Set<String> currVisited = new HashSet<>();
-        currList.add(current);
-        while (!currList.isEmpty()) {
-            Commit top = currList.pop();
-            if (otherContainer.contains(top.getUID())) {
-                return top;
-            }
-            if (!currVisited.contains(top.getUID())) {
-                currContainer.add(top.getUID());
-                currVisited.add(top.getUID());
-                if (!top.getParent().equals("")) {
-                    Commit parent = (Commit) Main.read(
-                            Main.getCommitPath(), top.getParent());
-                    if (otherContainer.contains(parent.getUID())) {
-                        return parent;
-                    }
-                    currList.add(parent);
-                }
-                if (!top.getSecondParent().equals("")) {
-                    Commit parent = (Commit) Main.read(
-                            Main.getCommitPath(), top.getSecondParent());
-                    if (otherContainer.contains(parent.getUID())) {
-                        return parent;
-                    }
-                    currList.add(parent);
-                }
-            }
-        }
-        return null;
+        MergeBases bases = MergeBases.open();
+        String id = bases.base(current.getUID(), other.getUID());
+        bases.save();
+        return id == null ? null
+            : (Commit) Main.read(Main.getCommitPath(), id);
     }
 
-    /** merge helper for exception case.
-     * Given OTHERCOMMIT, OTHERBLOBS, SPLITCOMMITBLOBS, CURRBLOBS, RMBLOBS,
-     * UPDATEBLOBS, CONFLICTS.
-     */
-    public void mergeExcept(Commit otherCommit,
-                            HashMap<String, String> otherBlobs,
-                            HashMap<String, String> splitCommitBlobs,
-                            HashMap<String, String> currBlobs,
-                            HashMap<String, String> rmBlobs,
-                            HashMap<String, String> updateBlobs,
-                            HashMap<String, String> conflicts) {
-        Main.write(Main.getGitPath(), ".tempStaging", Main.getStaging());
-        Main.getStaging().stagedAllTracked();
-        handleMerge(otherCommit, otherBlobs,
-                splitCommitBlobs, currBlobs,
-                rmBlobs, updateBlobs, conflicts);
-        Staging stage = Main.getStaging();
-        Set<String> currentUntracked = stage.getUntracked().keySet();
-        Set<String> copy = new HashSet<>(currentUntracked);
-        Set<String> update = updateBlobs.keySet();
-        Set<String> rm = rmBlobs.keySet();
-        currentUntracked.retainAll(update);
-        copy.retainAll(rm);
-        boolean updateEmpty = currentUntracked.isEmpty();
-        boolean rmEmpty = copy.isEmpty();
-        if (!updateEmpty || !rmEmpty) {
-            System.out.println("There is an untracked file in the way; "
-                                       + "delete it or add it first.");
-            Staging stage1 = (Staging) Main.read(Main.getGitPath(),
-                    ".tempStaging");
-            Main.setStaging(stage1);
-            File f = Utils.join(Main.getGitPath(), ".tempStaging");
-            String file = f.toString();
-            f.delete();
-            System.exit(0);
+    /** merge-base A B:  print the split point of commits A and B, each a
+     *  commit ID, an abbreviation of one or a branch name. */
+    public void mergeBase(String a, String b) {
+        Commit base = splitPoint(resolve(a), resolve(b));
+        if (base != null) {
+            System.out.println(base.getUID());
         }
     }
+
     /** handle edge cases for merge BRANCH. */
     public void mergeWrong(String branch) {
         if (!_allBranches.containsKey(branch)) {
@@ -548,7 +641,10 @@ public class CommitsTree implements Serializable {
         }
     }
 
-    /** merge, given BRANCH. */
+    /** merge, given BRANCH.  The merge is worked out from the object
+     *  store (see MergeTree), and only then are the files it changes
+     *  written to the working directory and committed, conflicts and
+     *  all. */
     public void merge(String branch) {
         boolean noAdded = Main.getStaging().getAddStage().isEmpty();
         boolean noRemoved = Main.getStaging().getRemoveStage().isEmpty();
@@ -561,6 +657,11 @@ public class CommitsTree implements Serializable {
                 _allBranches.get(branch));
         Commit current = getCurrentCommit();
         Commit splitCommit = splitPoint(current, otherCommit);
+        if (splitCommit == null) {
+            System.out.println("Given branch has no common ancestor with"
+                               + " the current branch.");
+            System.exit(0);
+        }
         if (splitCommit.getUID().equals(otherCommit.getUID())) {
             System.out.println("Given branch is an "
                                        + "ancestor of the current branch.");
@@ -571,203 +672,180 @@ public class CommitsTree implements Serializable {
             System.out.println("Current branch fast-forwarded.");
             return;
         }
-        HashMap<String, String> otherBlobs = otherCommit.getAllBlobs();
-        HashMap<String, String> splitCommitBlobs = splitCommit.getAllBlobs();
-        HashMap<String, String> currBlobs = getCurrentCommit().getAllBlobs();
-        HashMap<String, String> rmBlobs = new HashMap<>();
-        HashMap<String, String> updateBlobs = new HashMap<>();
-        HashMap<String, String> conflicts = new HashMap<>();
-        mergeExcept(otherCommit, otherBlobs, splitCommitBlobs, currBlobs,
-                rmBlobs, updateBlobs, conflicts);
-        for (String fileName: currBlobs.keySet()) {
-            if (splitCommitBlobs.containsKey(fileName)
-                && !otherBlobs.containsKey(fileName)) {
-                if (currBlobs.get(fileName).equals(
-                        splitCommitBlobs.get(fileName))) {
-                    File f = Utils.join(Main.getWorkingDir(), fileName);
-                    Utils.restrictedDelete(f);
-                }
+        MergeTree result = MergeTree.merge(splitCommit, current, otherCommit);
+        HashMap<String, String> currBlobs = current.getAllBlobs();
+        for (String fileName: result.update().keySet()) {
+            if (!currBlobs.containsKey(fileName)
+                && Utils.join(Main.getWorkingDir(), fileName).exists()) {
+                System.out.println("There is an untracked file in the way; "
+                                   + "delete it or add it first.");
+                System.exit(0);
             }
         }
+        result.writeBlobs(Main.getTempBlobPath());
+        for (String fileName: result.remove().keySet()) {
+            File f = Utils.join(Main.getWorkingDir(), fileName);
+            Utils.restrictedDelete(f);
+        }
+        for (Map.Entry<String, String> kv: result.update().entrySet()) {
+            File f = Utils.join(Main.getWorkingDir(), kv.getKey());
+            Utils.writeContents(f, result.contents(kv.getValue()));
+        }
         String msg = "Merged " + branch + " into " + _currentBranch + ".";
-        if (conflicts.isEmpty()) {
-            addCommit(msg, otherCommit.getUID(), updateBlobs, rmBlobs);
-        } else {
-            List<String> fileNames = Utils.plainFilenamesIn
-                                                   (Main.getWorkingDir());
-            for (String fileName: fileNames) {
-                if (conflicts.containsKey(fileName)) {
-                    File f = Utils.join(Main.getWorkingDir(), fileName);
-                    Utils.writeContents(f, conflicts.get(fileName));
-                    Main.getStaging().add(fileName, getCurrentCommit());
-                }
-            }
-            Main.getStaging().mergeUpdate(updateBlobs, rmBlobs, conflicts);
-            addCommit(msg, otherCommit.getUID(), updateBlobs, rmBlobs);
-            fixStaging(conflicts);
+        addCommit(msg, otherCommit.getUID(), result.update(),
+                  result.remove());
+        if (!result.conflicts().isEmpty()) {
             System.out.println("Encountered a merge conflict.");
         }
-        Main.getStaging().clearAll();
     }
 
-    /** fix staging area with CONFLICTS. */
-    public void fixStaging(HashMap<String, String> conflicts) {
-        HashMap<String, String> blobs = getCurrentCommit().getAllBlobs();
-        for (String fileName: conflicts.keySet()) {
-            if (blobs.containsKey(fileName)) {
-                Blob blob = (Blob) Main.read(
-                        Main.getBlobPath(), blobs.get(fileName));
-                blob.setContents(conflicts.get(fileName));
+    /** merge-tree:  print the merge of commits OURS and THEIRS, each a
+     *  commit ID, an abbreviation of one or a branch name, as the blob
+     *  ID and name of each file of the merged tree, followed by a line
+     *  for each file in conflict.  Nothing but the blobs the merge makes
+     *  is written, and those go to the blob store, so that the IDs
+     *  printed can be read. */
+    public void mergeTree(String ours, String theirs) {
+        Commit current = resolve(ours);
+        Commit other = resolve(theirs);
+        Commit split = splitPoint(current, other);
+        if (split == null) {
+            System.out.println("The commits have no common ancestor.");
+            System.exit(0);
+        }
+        MergeTree result = MergeTree.merge(split, current, other);
+        result.writeBlobs(Main.getBlobPath());
+        PrintWriter out = Main.output();
+        TreeSet<String> names = new TreeSet<>(result.tree().keySet());
+        for (String name : names) {
+            out.println(result.tree().get(name) + " " + name);
+        }
+        if (!result.conflicts().isEmpty()) {
+            out.println();
+            for (String name : result.conflicts().keySet()) {
+                out.println("CONFLICT (content): Merge conflict in " + name);
             }
         }
-    }
-    /** given OTHER, OTHERBLOBS.
-     * SPLITCOMMITBLOBS, CURRBLOBS, UPDATEBLOBS, CONFLICTS.
-     * help merge. */
-    public void mergePart1(Commit other,
-                           HashMap<String, String> otherBlobs,
-                           HashMap<String, String> splitCommitBlobs,
-                           HashMap<String, String> currBlobs,
-                           HashMap<String, String> updateBlobs,
-                           HashMap<String, String> conflicts) {
-        for (String fileName: otherBlobs.keySet()) {
-            boolean currContain = currBlobs.containsKey(fileName);
-            boolean splitContain = splitCommitBlobs.containsKey(fileName);
-            if (currContain && splitContain) {
-                String splitSha1 = splitCommitBlobs.get(fileName);
-                boolean currUnchanged = currBlobs.get(fileName).equals(
-                        splitSha1);
-                boolean otherUnchanged = otherBlobs.get(fileName).equals(
-                        splitSha1);
-                String contents = currBlobs.get(fileName);
-                boolean sameWay = contents.equals(otherBlobs.get(fileName));
-                if (currUnchanged && !otherUnchanged
-                            || otherUnchanged && !currUnchanged) {
-                    updateBlobs.put(fileName, splitSha1);
-                } else if (!currUnchanged && !otherUnchanged && !sameWay) {
-                    updateConflict(currBlobs, otherBlobs, conflicts, fileName);
+        out.flush();
+    }
+
+    /** diff:  the unified diff from FROM to TO, each a commit ID, an
+     *  abbreviation of one or a branch name.  A null FROM stands for
+     *  the files staged for the next commit, and a null TO for the
+     *  working directory.  Lines are matched by the histogram algorithm
+     *  if HISTOGRAM and by Myers' otherwise.  If NAMESTATUS, only the
+     *  names of the files changed are shown, each after A, D or M for
+     *  added, deleted or modified.  Files whose blobs are the same on
+     *  both sides are passed over unread. */
+    public void diff(String from, String to, boolean histogram,
+                     boolean nameStatus) {
+        HashMap<String, String> index = Main.getStaging().getIndex();
+        HashMap<String, String> oldIds = from == null ? index
+            : resolve(from).getAllBlobs();
+        HashMap<String, String> newIds;
+        if (to != null) {
+            newIds = resolve(to).getAllBlobs();
+        } else {
+            newIds = new HashMap<>();
+            TreeSet<String> names = new TreeSet<>(oldIds.keySet());
+            names.addAll(index.keySet());
+            for (String name : names) {
+                File f = Utils.join(Main.getWorkingDir(), name);
+                if (f.isFile()) {
+                    newIds.put(name, Utils.sha1(Utils.readContents(f)));
                 }
             }
-            if (!splitContain && !currContain) {
-                checkoutCommit(other.getUID(), fileName);
-                updateBlobs.put(fileName, otherBlobs.get(fileName));
-            }
-            if (currContain && !splitContain) {
-                String contents = currBlobs.get(fileName);
-                boolean sameWay = contents.equals(otherBlobs.get(fileName));
-                if (!sameWay) {
-                    updateConflict(currBlobs, otherBlobs, conflicts, fileName);
+        }
+        PrintWriter out = Main.output();
+        try {
+            TreeDiff.diff(oldIds, newIds, (name, ids) -> {
+                if (out.checkError()) {
+                    return;
+                } else if (nameStatus) {
+                    out.println(TreeDiff.status(ids[0], ids[1]) + "\t" + name);
+                    return;
                 }
-            }
-            if (splitContain && !currContain) {
-                String splitSha1 = splitCommitBlobs.get(fileName);
-                boolean otherUnchanged = otherBlobs.get(fileName).equals(
-                        splitSha1);
-                if (!otherUnchanged) {
-                    updateConflict(currBlobs, otherBlobs, conflicts, fileName);
+                String newText = null;
+                if (ids[1] != null) {
+                    newText = to != null ? contents(ids[1])
+                        : Utils.readContentsAsString(
+                            Utils.join(Main.getWorkingDir(), name));
                 }
-            }
+                Diff.unified(out, name,
+                             ids[0] == null ? null : contents(ids[0]),
+                             newText, histogram);
+            });
+        } finally {
+            out.flush();
         }
     }
 
-    /** helper for handleMerge.
-     * given OTHER, OTHERBLOBS, SPLITCOMMITBLOBS,
-     * CURRBLOBS, RMBLOBS, UPDATEBLOBS, CONFLICTS.
-     */
-    public void mergePart2(HashMap<String, String> otherBlobs,
-                           HashMap<String, String> splitCommitBlobs,
-                           HashMap<String, String> currBlobs,
-                           HashMap<String, String> rmBlobs,
-                           HashMap<String, String> updateBlobs,
-                           HashMap<String, String> conflicts) {
-        for (Map.Entry<String, String> kv: currBlobs.entrySet()) {
-            String fileName = kv.getKey();
-            String currSha1 = kv.getValue();
-            boolean splitContain = splitCommitBlobs.containsKey(fileName);
-            boolean otherContain = otherBlobs.containsKey(fileName);
-            if (!splitContain && !otherContain) {
-                updateBlobs.put(fileName, currSha1);
-            }
-            if (splitContain && !otherContain) {
-                String splitSha1 = splitCommitBlobs.get(fileName);
-                boolean currUnchanged = currBlobs.get(fileName).equals(
-                        splitSha1);
-                if (currUnchanged) {
-                    rmBlobs.put(fileName, currSha1);
-                }
-            }
-            if (splitContain && !otherContain) {
-                String splitSha1 = splitCommitBlobs.get(fileName);
-                boolean currUnchanged = currBlobs.get(fileName).equals(
-                        splitSha1);
-                if (!currUnchanged) {
-                    updateConflict(currBlobs, otherBlobs, conflicts, fileName);
-                }
+    /** blame FILENAME:  each line of the file as the head commit has
+     *  it, after the first seven digits of the commit that last changed
+     *  it, that commit's time and the line number (see Blame). */
+    public void blame(String fileName) {
+        String[] origins = Blame.blame(fileName, getCurrentCommit().getUID());
+        if (origins == null) {
+            System.out.println("File does not exist in that commit.");
+            System.exit(0);
+        }
+        String text = contents(getCurrentCommit().getAllBlobs().get(fileName));
+        HashMap<String, String> stamps = new HashMap<>();
+        int width = Integer.toString(origins.length).length();
+        PrintWriter out = Main.output();
+        int start = 0;
+        for (int n = 0; n < origins.length && !out.checkError(); n += 1) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end;
+            String id = origins[n];
+            String stamp = stamps.get(id);
+            if (stamp == null) {
+                stamp = ((Commit) Main.read(Main.getCommitPath(), id))
+                    .getTime(BLAME_TIME);
+                stamps.put(id, stamp);
             }
+            out.printf("%s (%s %" + width + "d) %s%n", id.substring(0, 7),
+                       stamp, n + 1, text.substring(start, end));
+            start = end + 1;
         }
+        out.flush();
     }
-    /** handle merge according to different cases.
-     * Given OTHER, OTHERBLOBS, SPLITCOMMITBLOBS, CURRBLOBS, RMBLOBS,
-     * UPDATEBLOBS, CONFLICTS.
-     * 1. merge modifications in OTHER, xor in CURRENT
-     * 2. modified in both?
-     * 3. not present in split, but in current, remain as they are. ???
-     * 4. any files not present in split, current, but present in other:
-     *      checked out, and staged.
-     * 5. Any files present at the split point, unmodified in the given branch,
-     *    and absent in the current branch should remain absent.
-     * 6. conflicts.
-     * 7. Any files that have been modified in the current branch but not
-     *    in the given branch since the split point should stay as they are.
-     */
-    public void handleMerge(Commit other,
-                            HashMap<String, String> otherBlobs,
-                            HashMap<String, String> splitCommitBlobs,
-                            HashMap<String, String> currBlobs,
-                            HashMap<String, String> rmBlobs,
-                            HashMap<String, String> updateBlobs,
-                            HashMap<String, String> conflicts) {
-        mergePart1(other, otherBlobs, splitCommitBlobs,
-                currBlobs, updateBlobs, conflicts);
-        mergePart2(otherBlobs, splitCommitBlobs,
-                currBlobs, rmBlobs, updateBlobs, conflicts);
-    }
-
-    /** modify file in conflicts with format:
-     * <<<<<<< HEAD
-     * contents of file in current branch
-     * =======
-     * contents of file in given branch
-     * >>>>>>>
-     * define CONFLICTS:
-     * the contents of both are changed and different from other.
-     * or the contents of one are changed and the other file is deleted,
-     * or the file was absent at the split point and
-     * has different contents in the given and current branches.
-     * given CURRBLOBS, OTHERBLOBS, FILENAME.
-     */
-    public void updateConflict(HashMap<String, String> currBlobs,
-                               HashMap<String, String> otherBlobs,
-                               HashMap<String, String> conflicts,
-                               String fileName) {
-        String header = "<<<<<<< HEAD" + "\n";
-        boolean currContain = currBlobs.containsKey(fileName);
-        boolean otherContain = otherBlobs.containsKey(fileName);
-        if (currContain) {
-            Blob blob = (Blob) Main.read(Main.getBlobPath(),
-                    currBlobs.get(fileName));
-            header += blob.getContents();
+
+    /** Return the commit named by REV, a branch name or a commit ID or
+     *  abbreviation of one. */
+    Commit resolve(String rev) {
+        String id = _allBranches.get(rev);
+        if (id == null) {
+            id = validateID(rev);
+        }
+        if (id.equals("")) {
+            System.out.println("No commit with that id exists.");
+            System.exit(0);
         }
+        return (Commit) Main.read(Main.getCommitPath(), id);
+    }
 
-        header += "=======" + "\n";
-        if (otherContain) {
-            Blob blob = (Blob) Main.read(Main.getBlobPath(),
-                    otherBlobs.get(fileName));
-            header += blob.getContents();
+    /** Return the contents of blob ID, staged or committed, or "" if ID
+     *  is null. */
+    static String contents(String id) {
+        if (id == null) {
+            return "";
         }
+        String dir = Main.getBlobPath();
+        if (ObjectStore.file(Main.getTempBlobPath(), id).isFile()) {
+            dir = Main.getTempBlobPath();
+        }
+        return ((Blob) Main.read(dir, id)).getContents();
+    }
 
-        header += ">>>>>>>" + "\n";
-        conflicts.put(fileName, header);
+    /** Point every branch at the image of its commit under COMMITIDS. */
+    public void remapBranches(HashMap<String, String> commitIds) {
+        for (Map.Entry<String, String> kv: _allBranches.entrySet()) {
+            String id = commitIds.get(kv.getValue());
+            if (id != null) {
+                kv.setValue(id);
+            }
+        }
     }
 
     /** return all branches. */
@@ -797,14 +875,16 @@ public class CommitsTree implements Serializable {
             System.exit(0);
             return;
         }
-        Set<String> currentNames = getCurrentCommit().getAllBlobs().keySet();
-        for (String name: currentNames) {
-            File f = Paths.get(Main.getWorkingDir(), name).toFile();
-            Utils.restrictedDelete(f);
-        }
+        TreeDiff.diff(getCurrentCommit(), commit, (name, ids) -> {
+            if (ids[1] == null) {
+                File f = Paths.get(Main.getWorkingDir(), name).toFile();
+                Utils.restrictedDelete(f);
+            }
+        });
     }
 
-    /** checkout BRANCH. */
+    /** checkout BRANCH.  Only the files whose blobs differ between the
+     *  two heads, or that are missing, are written. */
     public void checkoutBranch(String branch) {
         if (!getAllBranches().containsKey(branch)) {
             System.out.println("No such branch exists.");
@@ -814,21 +894,30 @@ public class CommitsTree implements Serializable {
             String commitID = getAllBranches().get(branch);
             Commit commit = (Commit) Main.read(Main.getCommitPath(), commitID);
             HashMap<String, String> blobs = commit.getAllBlobs();
-            Set<String> updateNames =  blobs.keySet();
+            HashMap<String, String> current = getCurrentCommit().getAllBlobs();
             removeIfNotTracked(commitID);
-            for (String update: updateNames) {
-                Blob blob = (Blob) Main.read(Main.getBlobPath(),
-                        blobs.get(update));
-                String contents = blob.getContents();
-                File workFile = Paths.get(Main.getWorkingDir(),
-                        update).toFile();
-                Utils.writeContents(workFile, contents);
-            }
+            writeChanged(current, blobs);
             _currentBranch = branch;
             Main.getStaging().setBlobs(commit);
             Main.getStaging().clearAll();
         }
     }
 
+    /** Write to the working directory each file of BLOBS whose blob is
+     *  not its blob in CURRENT, or that is missing. */
+    private void writeChanged(HashMap<String, String> current,
+                              HashMap<String, String> blobs) {
+        for (Map.Entry<String, String> kv: blobs.entrySet()) {
+            File workFile = Paths.get(Main.getWorkingDir(),
+                    kv.getKey()).toFile();
+            if (kv.getValue().equals(current.get(kv.getKey()))
+                && workFile.isFile()) {
+                continue;
+            }
+            Blob blob = (Blob) Main.read(Main.getBlobPath(), kv.getValue());
+            Utils.writeContents(workFile, blob.getContents());
+        }
+    }
+
 
 }
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/** Framing of stored objects by codec.  A compressed object starts
+ *  with MAGIC and the id of its codec; anything else is read as the
+ *  plain serialized form written before compression existed.  The
+ *  codec used for writing is set by core.compression in .gitlet/config
+ *  and its level by core.compressionLevel.
+ *  @author Yuan Sun
+ */
+class Compression {
+
+    /** First byte of a compressed object.  Serialized Java objects
+     *  start with 0xac, so old uncompressed files never match it. */
+    static final int MAGIC = 'g';
+    /** Codec used when the config names none. */
+    static final String DEFAULT_CODEC = "deflate";
+
+    /** Codecs by name, in registration order. */
+    private static final LinkedHashMap<String, Codec> BY_NAME =
+        new LinkedHashMap<>();
+    /** Codecs by header id. */
+    private static final Codec[] BY_ID = new Codec[256];
+
+    static {
+        register(new StoreCodec());
+        register(new DeflateCodec());
+        register(new LzCodec());
+    }
+
+    /** Make CODEC available for reading and writing. */
+    static void register(Codec codec) {
+        BY_NAME.put(codec.name(), codec);
+        BY_ID[codec.id()] = codec;
+    }
+
+    /** Return all registered codecs. */
+    static Collection<Codec> codecs() {
+        return BY_NAME.values();
+    }
+
+    /** Return the codec called NAME. */
+    static Codec forName(String name) {
+        Codec codec = BY_NAME.get(name);
+        if (codec == null) {
+            throw Utils.error("Unknown compression codec: %s", name);
+        }
+        return codec;
+    }
+
+    /** Return the codec new objects are written with. */
+    static Codec configured() {
+        return forName(Config.get("core.compression", DEFAULT_CODEC));
+    }
+
+    /** Return the compression level new objects are written with. */
+    static int level() {
+        return Config.getInt("core.compressionLevel", -1);
+    }
+
+    /** Write the header of CODEC to OUT and return a stream that
+     *  compresses into OUT at LEVEL. */
+    static OutputStream wrap(OutputStream out, Codec codec, int level)
+        throws IOException {
+        out.write(MAGIC);
+        out.write(codec.id());
+        return codec.compress(out, level);
+    }
+
+    /** Return a stream compressing into OUT with the configured codec. */
+    static OutputStream wrap(OutputStream out) throws IOException {
+        return wrap(out, configured(), level());
+    }
+
+    /** Return a stream of the decompressed contents of IN, which may
+     *  also hold an old uncompressed object. */
+    static InputStream open(InputStream in) throws IOException {
+        PushbackInputStream peek = new PushbackInputStream(in, 1);
+        int first = peek.read();
+        if (first != MAGIC) {
+            if (first >= 0) {
+                peek.unread(first);
+            }
+            return peek;
+        }
+        int id = peek.read();
+        if (id < 0 || BY_ID[id] == null) {
+            throw new IOException("unknown codec id " + id);
+        }
+        return BY_ID[id].decompress(peek);
+    }
+
+    /** Return DATA compressed and framed with the configured codec. */
+    static byte[] compress(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = wrap(bytes);
+            out.write(data);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of the framed object DATA. */
+    static byte[] decompress(byte[] data) {
+        try {
+            InputStream in = open(new ByteArrayInputStream(data));
+            byte[] result = in.readAllBytes();
+            in.close();
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The identity codec, for repos that would rather not compress. */
+    private static class StoreCodec implements Codec {
+        @Override
+        public int id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Repository settings, kept as a properties file in .gitlet/config.
+ *  @author Yuan Sun
+ */
+class Config {
+
+    /** Settings read so far, or null before the first lookup. */
+    private static Properties _props;
+
+    /** Return the config file of the current repo. */
+    private static File file() {
+        return Utils.join(Main.getWorkingDir(), ".gitlet", "config");
+    }
+
+    /** Return the settings, reading them on first use. */
+    private static Properties props() {
+        if (_props == null) {
+            _props = new Properties();
+            File f = file();
+            if (f.isFile()) {
+                try (InputStream in = new FileInputStream(f)) {
+                    _props.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return _props;
+    }
+
+    /** Return the value of KEY, or DFLT if it is not set. */
+    static String get(String key, String dflt) {
+        return props().getProperty(key, dflt);
+    }
+
+    /** Return the integer value of KEY, or DFLT if it is not set. */
+    static int getInt(String key, int dflt) {
+        String value = props().getProperty(key);
+        if (value == null) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Set KEY to VALUE and save the config file. */
+    static void set(String key, String value) {
+        props().setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(file())) {
+            _props.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
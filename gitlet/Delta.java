@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Binary deltas: a target expressed as copies out of a base plus
+ *  inserted literal bytes.  A delta is the varint lengths of the base
+ *  and the target followed by instructions, each an opcode byte and
+ *  varint operands:
+ *      INSERT len, then len literal bytes
+ *      COPY   offset len, copying base[offset .. offset+len-1]
+ *  @author Yuan Sun
+ */
+class Delta {
+
+    /** Opcode of an insert instruction. */
+    static final int INSERT = 0;
+    /** Opcode of a copy instruction. */
+    static final int COPY = 1;
+    /** Length of the blocks of the base that are indexed for matches;
+     *  also the shortest copy worth emitting. */
+    static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Return the delta turning BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int outFactor = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            outFactor *= PRIME;
+        }
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int cand = table[h & mask];
+            if (cand >= 0 && same(base, cand, target, i)) {
+                int start = i, from = cand;
+                while (start > pending && from > 0
+                       && target[start - 1] == base[from - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = i + BLOCK, baseEnd = cand + BLOCK;
+                while (end < target.length && baseEnd < base.length
+                       && target[end] == base[baseEnd]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                insert(out, target, pending, start);
+                out.write(COPY);
+                writeVarint(out, from);
+                writeVarint(out, end - start);
+                i = end;
+                pending = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else if (i + BLOCK < target.length) {
+                h = (h - (target[i] & 0xff) * outFactor) * PRIME
+                    + (target[i + BLOCK] & 0xff);
+                i += 1;
+            } else {
+                break;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        long baseLen = readVarint(delta, pos);
+        long targetLen = readVarint(delta, pos);
+        if (baseLen != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] result = new byte[(int) targetLen];
+        int op = 0;
+        while (pos[0] < delta.length) {
+            int code = delta[pos[0]++];
+            if (code == INSERT) {
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, op, len);
+                pos[0] += len;
+                op += len;
+            } else if (code == COPY) {
+                int from = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, from, result, op, len);
+                op += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (op != targetLen) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Return the depth-one hash table of the BLOCK-aligned blocks of
+     *  BASE:  slot hash & (length - 1) holds the block's offset, or -1.
+     *  Earlier blocks win, so copies prefer the front of the base. */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = 1;
+        while (size < 2 * blocks) {
+            size <<= 1;
+        }
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int p = (blocks - 1) * BLOCK; p >= 0; p -= BLOCK) {
+            table[hash(base, p) & (size - 1)] = p;
+        }
+        return table;
+    }
+
+    /** Return the rolling hash of DATA[P .. P+BLOCK-1]. */
+    private static int hash(byte[] data, int p) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + (data[p + k] & 0xff);
+        }
+        return h;
+    }
+
+    /** Return true iff BASE and TARGET agree for BLOCK bytes starting
+     *  at FROM and AT respectively. */
+    private static boolean same(byte[] base, int from, byte[] target,
+                                int at) {
+        if (from + BLOCK > base.length) {
+            return false;
+        }
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[from + k] != target[at + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write an insert of TARGET[START .. END-1] to OUT, if nonempty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int start, int end) {
+        if (end > start) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Write the non-negative VALUE to OUT as a base-128 varint. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Return the varint in DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
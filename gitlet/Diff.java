@@ -0,0 +1,603 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Line diffs.  Texts are split into lines, each line is replaced by a
+ *  number shared by all equal lines, and two such sequences are matched
+ *  either with Myers' O(ND) algorithm in its linear-space form, where
+ *  the middle snake of the edit graph is found by searching from both
+ *  ends at once and the two halves on either side of it are matched the
+ *  same way, or with the histogram algorithm, which anchors on the
+ *  rarest lines the sequences share and falls back on Myers' algorithm
+ *  where they share only common lines.  Matches are written out as a
+ *  unified diff.
+ *  @author Yuan Sun
+ */
+class Diff {
+
+    /** Fewest edits the search for a middle snake may cost before it
+     *  gives up on a shortest script. */
+    static final int MIN_COST = 256;
+    /** Lines a histogram anchor may occur more often than this are not
+     *  used as anchors. */
+    static final int MAX_CHAIN = 64;
+    /** Lines of context around each hunk of a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** Numbers lines, giving equal lines the same number.  Lines are
+     *  looked up where they lie in the text, in an open-addressed table
+     *  of their hashes, so that only lines not seen before are copied
+     *  out of it. */
+    static class Lines {
+        /** Lines seen, by number. */
+        private final List<String> _lines = new ArrayList<>();
+        /** Hash of each line seen, by number. */
+        private int[] _hashes = new int[64];
+        /** Number of the line in each slot, or -1 if it is empty.  The
+         *  table is at most half full. */
+        private int[] _slots = empty(128);
+
+        /** Return the lines of TEXT, each with its terminating newline
+         *  if it has one, by number. */
+        int[] number(String text) {
+            int[] result = new int[count(text)];
+            int n = 0;
+            for (int start = 0; start < text.length(); n += 1) {
+                int end = text.indexOf('\n', start);
+                end = end < 0 ? text.length() : end + 1;
+                int hash = 0;
+                for (int i = start; i < end; i += 1) {
+                    hash = 31 * hash + text.charAt(i);
+                }
+                int mask = _slots.length - 1;
+                int slot = spread(hash) & mask;
+                int id;
+                while ((id = _slots[slot]) >= 0) {
+                    String line = _lines.get(id);
+                    if (_hashes[id] == hash && line.length() == end - start
+                        && text.regionMatches(start, line, 0, end - start)) {
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (id < 0) {
+                    id = add(text.substring(start, end), hash, slot);
+                }
+                result[n] = id;
+                start = end;
+            }
+            return result;
+        }
+
+        /** Number LINE, whose hash is HASH, putting it in empty slot
+         *  SLOT, and return its number. */
+        private int add(String line, int hash, int slot) {
+            int id = _lines.size();
+            _lines.add(line);
+            if (id == _hashes.length) {
+                _hashes = Arrays.copyOf(_hashes, 2 * id);
+            }
+            _hashes[id] = hash;
+            _slots[slot] = id;
+            if (2 * _lines.size() > _slots.length) {
+                _slots = empty(2 * _slots.length);
+                int mask = _slots.length - 1;
+                for (int k = 0; k < _lines.size(); k += 1) {
+                    int s = spread(_hashes[k]) & mask;
+                    while (_slots[s] >= 0) {
+                        s = (s + 1) & mask;
+                    }
+                    _slots[s] = k;
+                }
+            }
+            return id;
+        }
+
+        /** Return a table of N empty slots. */
+        private static int[] empty(int n) {
+            int[] result = new int[n];
+            Arrays.fill(result, -1);
+            return result;
+        }
+
+        /** Return HASH with its high bits mixed into its low ones. */
+        private static int spread(int hash) {
+            hash *= 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /** Return the line numbered ID. */
+        String line(int id) {
+            return _lines.get(id);
+        }
+
+        /** Return the number of lines in TEXT. */
+        static int count(String text) {
+            int n = 0;
+            for (int i = text.indexOf('\n'); i >= 0;
+                 i = text.indexOf('\n', i + 1)) {
+                n += 1;
+            }
+            if (!text.isEmpty() && !text.endsWith("\n")) {
+                n += 1;
+            }
+            return n;
+        }
+    }
+
+    /** Return, for each line of A, the position of the line of B it is
+     *  matched with in a short edit script from A to B, or -1 if it is
+     *  deleted.  Matched positions increase along A.  Lines found in
+     *  only one of A and B cannot match and are left out of the search,
+     *  which is exact; the script is also a shortest one unless the
+     *  search would pass MIN_COST edits, in which case it settles for a
+     *  good one (see middle).  Lines are numbered as by Lines. */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int max = 0;
+        for (int x : a) {
+            max = Math.max(max, x);
+        }
+        for (int y : b) {
+            max = Math.max(max, y);
+        }
+        byte[] seen = new byte[max + 1];
+        for (int x : a) {
+            seen[x] |= 1;
+        }
+        for (int y : b) {
+            seen[y] |= 2;
+        }
+        int[] aPos = common(a, seen), bPos = common(b, seen);
+        int[] aKept = new int[aPos.length], bKept = new int[bPos.length];
+        for (int i = 0; i < aPos.length; i += 1) {
+            aKept[i] = a[aPos[i]];
+        }
+        for (int j = 0; j < bPos.length; j += 1) {
+            bKept[j] = b[bPos[j]];
+        }
+        int[] kept = new int[aKept.length];
+        Arrays.fill(kept, -1);
+        int size = aKept.length + bKept.length + 4;
+        new Diff(aKept, bKept, new int[size], new int[size], kept)
+            .match(0, aKept.length, 0, bKept.length);
+        for (int i = 0; i < kept.length; i += 1) {
+            if (kept[i] >= 0) {
+                result[aPos[i]] = bPos[kept[i]];
+            }
+        }
+        return result;
+    }
+
+    /** Return, for each line of text A, the line of text B it is matched
+     *  with, or -1, as match would find it for the texts numbered.  The
+     *  lines before the first character in which the texts differ and
+     *  after the last are matched where they lie, by comparing characters,
+     *  and only the lines between are numbered, so that two versions of a
+     *  large file with a small change between them are matched in time
+     *  little more than that of reading them. */
+    static int[] match(String a, String b) {
+        int most = Math.min(a.length(), b.length());
+        int pre = agree(a, b, most, false);
+        pre = a.lastIndexOf('\n', pre - 1) + 1;
+        int post = agree(a, b, most - pre, true);
+        while (post > 0 && !(starts(a, a.length() - post)
+                             && starts(b, b.length() - post))) {
+            post -= 1;
+        }
+        int head = 0, tail = 0;
+        for (int i = a.indexOf('\n'); i >= 0 && i < pre;
+             i = a.indexOf('\n', i + 1)) {
+            head += 1;
+        }
+        for (int i = a.indexOf('\n', a.length() - post); i >= 0;
+             i = a.indexOf('\n', i + 1)) {
+            tail += 1;
+        }
+        if (post > 0 && !a.endsWith("\n")) {
+            tail += 1;
+        }
+        Lines lines = new Lines();
+        int[] aMid = lines.number(a.substring(pre, a.length() - post));
+        int[] bMid = lines.number(b.substring(pre, b.length() - post));
+        int[] mid = match(aMid, bMid);
+        int[] result = new int[head + mid.length + tail];
+        for (int i = 0; i < head; i += 1) {
+            result[i] = i;
+        }
+        for (int i = 0; i < mid.length; i += 1) {
+            result[head + i] = mid[i] < 0 ? -1 : head + mid[i];
+        }
+        for (int i = 0; i < tail; i += 1) {
+            result[head + mid.length + i] = head + bMid.length + i;
+        }
+        return result;
+    }
+
+    /** Return the number of characters, up to MOST, in which A and B
+     *  agree from their starts, or from their ends if BACK.  Blocks of
+     *  doubling length are compared until one differs, and then halving
+     *  ones within it, so that the time taken is about that of copying
+     *  the characters in which they agree. */
+    private static int agree(String a, String b, int most, boolean back) {
+        int n = 0;
+        boolean grow = true;
+        for (int step = 64; step > 0 && n < most;) {
+            int k = Math.min(step, most - n);
+            boolean same;
+            if (back) {
+                same = a.substring(a.length() - n - k, a.length() - n)
+                    .equals(b.substring(b.length() - n - k, b.length() - n));
+            } else {
+                same = a.substring(n, n + k).equals(b.substring(n, n + k));
+            }
+            if (same) {
+                n += k;
+                step = grow ? 2 * step : step / 2;
+            } else {
+                grow = false;
+                step = k / 2;
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff position AT of TEXT begins a line. */
+    private static boolean starts(String text, int at) {
+        return at == 0 || text.charAt(at - 1) == '\n';
+    }
+
+    /** Return the positions in SEQ of the lines marked 3 in SEEN. */
+    private static int[] common(int[] seq, byte[] seen) {
+        int n = 0;
+        for (int x : seq) {
+            if (seen[x] == 3) {
+                n += 1;
+            }
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int i = 0; i < seq.length; i += 1) {
+            if (seen[seq[i]] == 3) {
+                result[n++] = i;
+            }
+        }
+        return result;
+    }
+
+    /** Return matches of A against B as match does, found with the
+     *  histogram algorithm:  in each region, the run of equal lines
+     *  around the line of A occurring least often (and at most
+     *  MAX_CHAIN times) that B also has is matched, and the regions
+     *  before and after it are matched in turn.  Of equally rare and
+     *  long runs, the one nearest the middle is taken, so that evenly
+     *  spread edits split the regions evenly.  A region with no such
+     *  line is matched by Myers' algorithm. */
+    static int[] histogram(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int max = 0;
+        for (int x : a) {
+            max = Math.max(max, x);
+        }
+        for (int y : b) {
+            max = Math.max(max, y);
+        }
+        int[] count = new int[max + 1];
+        int[] head = new int[max + 1];
+        int[] next = new int[a.length];
+        int size = a.length + b.length + 4;
+        Diff myers = new Diff(a, b, new int[size], new int[size], result);
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {0, a.length, 0, b.length});
+        while (!regions.isEmpty()) {
+            int[] r = regions.pop();
+            int aLo = r[0], aHi = r[1], bLo = r[2], bHi = r[3];
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                result[aLo++] = bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                result[--aHi] = --bHi;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                continue;
+            }
+            for (int i = aHi - 1; i >= aLo; i -= 1) {
+                int v = a[i];
+                if (count[v] == 0) {
+                    head[v] = -1;
+                }
+                next[i] = head[v];
+                head[v] = i;
+                count[v] += 1;
+            }
+            int bestCount = MAX_CHAIN + 1, bestLen = 0;
+            int as = 0, ae = 0, bs = 0, be = 0;
+            for (int j = bLo; j < bHi;) {
+                int c = count[b[j]];
+                int nextJ = j + 1;
+                if (c > 0 && c <= bestCount) {
+                    for (int i = head[b[j]]; i >= 0; i = next[i]) {
+                        int s = i, t = j;
+                        while (s > aLo && t > bLo && a[s - 1] == b[t - 1]) {
+                            s -= 1;
+                            t -= 1;
+                        }
+                        int e = i + 1, f = j + 1;
+                        while (e < aHi && f < bHi && a[e] == b[f]) {
+                            e += 1;
+                            f += 1;
+                        }
+                        if (c < bestCount || e - s > bestLen
+                            || e - s == bestLen
+                               && Math.abs(s + e - aLo - aHi)
+                                  < Math.abs(as + ae - aLo - aHi)) {
+                            bestCount = c;
+                            bestLen = e - s;
+                            as = s;
+                            ae = e;
+                            bs = t;
+                            be = f;
+                        }
+                        nextJ = Math.max(nextJ, f);
+                    }
+                }
+                j = nextJ;
+            }
+            for (int i = aLo; i < aHi; i += 1) {
+                count[a[i]] = 0;
+            }
+            if (bestLen == 0) {
+                myers.match(aLo, aHi, bLo, bHi);
+                continue;
+            }
+            for (int i = as; i < ae; i += 1) {
+                result[i] = bs + i - as;
+            }
+            regions.push(new int[] {ae, aHi, be, bHi});
+            regions.push(new int[] {aLo, as, bLo, bs});
+        }
+        return result;
+    }
+
+    /** Write to OUT the unified diff of file NAME from text A to text B,
+     *  either of which is null if the file is absent, matching lines by
+     *  the histogram algorithm if HISTOGRAM and otherwise by Myers'. */
+    static void unified(PrintWriter out, String name, String a, String b,
+                        boolean histogram) {
+        Lines lines = new Lines();
+        int[] x = lines.number(a == null ? "" : a);
+        int[] y = lines.number(b == null ? "" : b);
+        int[] match = histogram ? histogram(x, y) : match(x, y);
+        List<int[]> changes = new ArrayList<>();
+        for (int i = 0, j = 0; i < x.length || j < y.length;) {
+            if (i < x.length && match[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < x.length && match[i] < 0) {
+                i += 1;
+            }
+            j = i < x.length ? match[i] : y.length;
+            changes.add(new int[] {i0, i, j0, j});
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        out.println("diff --git a/" + name + " b/" + name);
+        if (a == null) {
+            out.println("new file");
+        } else if (b == null) {
+            out.println("deleted file");
+        }
+        out.println(a == null ? "--- /dev/null" : "--- a/" + name);
+        out.println(b == null ? "+++ /dev/null" : "+++ b/" + name);
+        for (int c = 0; c < changes.size();) {
+            int last = c;
+            while (last + 1 < changes.size()
+                   && changes.get(last + 1)[0] - changes.get(last)[1]
+                      <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int[] first = changes.get(c), end = changes.get(last);
+            int i0 = Math.max(0, first[0] - CONTEXT);
+            int j0 = first[2] - (first[0] - i0);
+            int i1 = Math.min(x.length, end[1] + CONTEXT);
+            int j1 = end[3] + (i1 - end[1]);
+            out.println("@@ -" + range(i0, i1) + " +" + range(j0, j1)
+                        + " @@");
+            int i = i0;
+            for (int k = c; k <= last; k += 1) {
+                int[] ch = changes.get(k);
+                for (; i < ch[0]; i += 1) {
+                    line(out, ' ', lines.line(x[i]));
+                }
+                for (; i < ch[1]; i += 1) {
+                    line(out, '-', lines.line(x[i]));
+                }
+                for (int j = ch[2]; j < ch[3]; j += 1) {
+                    line(out, '+', lines.line(y[j]));
+                }
+            }
+            for (; i < i1; i += 1) {
+                line(out, ' ', lines.line(x[i]));
+            }
+            c = last + 1;
+        }
+    }
+
+    /** Return lines [LO, HI) as a hunk header gives them. */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(lo + 1);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    /** Write LINE to OUT after TAG, noting a missing final newline. */
+    private static void line(PrintWriter out, char tag, String line) {
+        out.print(tag);
+        if (line.endsWith("\n")) {
+            out.print(line);
+        } else {
+            out.println(line);
+            out.println("\\ No newline at end of file");
+        }
+    }
+
+    /** The old sequence. */
+    private final int[] _a;
+    /** The new sequence. */
+    private final int[] _b;
+    /** Furthest reaching forward paths, by diagonal. */
+    private final int[] _forward;
+    /** Furthest reaching backward paths, by diagonal. */
+    private final int[] _backward;
+    /** Matches found, as returned by match. */
+    private final int[] _result;
+
+    /** A matcher of A against B, using FORWARD and BACKWARD, each of
+     *  a.length + b.length + 4 ints, and recording matches in RESULT. */
+    private Diff(int[] a, int[] b, int[] forward, int[] backward,
+                 int[] result) {
+        _a = a;
+        _b = b;
+        _forward = forward;
+        _backward = backward;
+        _result = result;
+    }
+
+    /** Match _a[ALO..AHI) against _b[BLO..BHI). */
+    private void match(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            _result[aLo++] = bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            _result[--aHi] = --bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] split = middle(aLo, aHi, bLo, bHi);
+        if (split == null) {
+            return;
+        }
+        match(aLo, split[0], bLo, split[1]);
+        match(split[0], aHi, split[1], bHi);
+    }
+
+    /** Return the point {x, y} at which a shortest edit script from
+     *  _a[ALO..AHI) to _b[BLO..BHI), which share no first or last line,
+     *  crosses its middle, or null if they share no line at all.  As in
+     *  git's xdiff, the search stops after about the square root of the
+     *  sizes in edits, but no fewer than MIN_COST, and then splits at
+     *  the forward path that got furthest; scripts that long are rarely
+     *  read edit by edit, and this bounds the time to O(N sqrt N). */
+    private int[] middle(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int maxCost = Math.max(MIN_COST, (int) Math.sqrt(n + m) * 4);
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] v1 = _forward, v2 = _backward;
+        Arrays.fill(v1, 0, length, -1);
+        Arrays.fill(v2, 0, length, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            if (d > maxCost) {
+                return furthest(v1, offset, d - 1, n, m, aLo, bLo);
+            }
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1off = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1off - 1] < v1[k1off + 1])) {
+                    x1 = v1[k1off + 1];
+                } else {
+                    x1 = v1[k1off - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m
+                       && _a[aLo + x1] == _b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[k1off] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (odd) {
+                    int k2off = offset + delta - k1;
+                    if (k2off >= 0 && k2off < length && v2[k2off] != -1
+                        && x1 >= n - v2[k2off]) {
+                        return new int[] {aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2off = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2off - 1] < v2[k2off + 1])) {
+                    x2 = v2[k2off + 1];
+                } else {
+                    x2 = v2[k2off - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && _a[aHi - 1 - x2] == _b[bHi - 1 - y2]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[k2off] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!odd) {
+                    int k1off = offset + delta - k2;
+                    if (k1off >= 0 && k1off < length && v1[k1off] != -1) {
+                        int x1 = v1[k1off];
+                        int y1 = offset + x1 - k1off;
+                        if (x1 >= n - x2) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the end of the forward path in V, whose diagonals are at
+     *  OFFSET, that got furthest in D edits through an N by M graph at
+     *  ALO, BLO, or null if none got past the start or reached the end. */
+    private static int[] furthest(int[] v, int offset, int d, int n, int m,
+                                  int aLo, int bLo) {
+        int best = 0, bestX = 0, bestY = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = v[offset + k];
+            int y = x - k;
+            if (x >= 0 && x <= n && y >= 0 && y <= m && x + y > best
+                && x + y < n + m) {
+                best = x + y;
+                bestX = x;
+                bestY = y;
+            }
+        }
+        if (best == 0) {
+            return null;
+        }
+        return new int[] {aLo + bestX, bLo + bestY};
+    }
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** Three-way merge of texts, line by line, as diff3 does it.  Both
+ *  versions are diffed against their common base.  Base lines matched in
+ *  both diffs are stable and kept; between stable lines, a region changed
+ *  in only one version takes that version, a region changed the same way
+ *  in both takes either, and anything else is a conflict, written as
+ *      <<<<<<< HEAD
+ *      lines of the current version
+ *      =======
+ *      lines of the given version
+ *      >>>>>>>
+ *  @author Yuan Sun
+ */
+class LineMerge {
+
+    /** Write the merge of OURS and THEIRS, both changed from BASE, to
+     *  OUT.  Return true iff it has conflicts. */
+    static boolean merge(String base, String ours, String theirs,
+                         Writer out) throws IOException {
+        Diff.Lines lines = new Diff.Lines();
+        int[] b = lines.number(base);
+        int[] o = lines.number(ours);
+        int[] t = lines.number(theirs);
+        int[] toOurs = Diff.match(b, o);
+        int[] toTheirs = Diff.match(b, t);
+        boolean conflict = false;
+        int i = 0, io = 0, it = 0;
+        while (i < b.length || io < o.length || it < t.length) {
+            if (i < b.length && toOurs[i] == io && toTheirs[i] == it) {
+                out.write(lines.line(b[i]));
+                i += 1;
+                io += 1;
+                it += 1;
+                continue;
+            }
+            int j = i;
+            while (j < b.length && (toOurs[j] < 0 || toTheirs[j] < 0)) {
+                j += 1;
+            }
+            int jo = j < b.length ? toOurs[j] : o.length;
+            int jt = j < b.length ? toTheirs[j] : t.length;
+            if (same(b, i, j, o, io, jo)) {
+                write(lines, t, it, jt, false, out);
+            } else if (same(b, i, j, t, it, jt)
+                       || same(o, io, jo, t, it, jt)) {
+                write(lines, o, io, jo, false, out);
+            } else {
+                conflict = true;
+                out.write("<<<<<<< HEAD\n");
+                write(lines, o, io, jo, true, out);
+                out.write("=======\n");
+                write(lines, t, it, jt, true, out);
+                out.write(">>>>>>>\n");
+            }
+            i = j;
+            io = jo;
+            it = jt;
+        }
+        return conflict;
+    }
+
+    /** Write the conflict between whole texts OURS and THEIRS to OUT, for
+     *  a file with no common base or deleted on one side, which is then
+     *  "". */
+    static void conflict(String ours, String theirs, Writer out)
+        throws IOException {
+        Diff.Lines lines = new Diff.Lines();
+        int[] o = lines.number(ours);
+        int[] t = lines.number(theirs);
+        out.write("<<<<<<< HEAD\n");
+        write(lines, o, 0, o.length, true, out);
+        out.write("=======\n");
+        write(lines, t, 0, t.length, true, out);
+        out.write(">>>>>>>\n");
+    }
+
+    /** Return true iff A[ALO..AHI) and B[BLO..BHI) are equal. */
+    private static boolean same(int[] a, int aLo, int aHi,
+                                int[] b, int bLo, int bHi) {
+        if (aHi - aLo != bHi - bLo) {
+            return false;
+        }
+        for (int k = 0; k < aHi - aLo; k += 1) {
+            if (a[aLo + k] != b[bLo + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write lines SEQ[LO..HI), numbered by LINES, to OUT.  If MARKED,
+     *  they are followed by a conflict marker, and a last line with no
+     *  newline gets one so that the marker has a line of its own. */
+    private static void write(Diff.Lines lines, int[] seq, int lo, int hi,
+                              boolean marked, Writer out)
+        throws IOException {
+        for (int k = lo; k < hi; k += 1) {
+            String line = lines.line(seq[k]);
+            out.write(line);
+            if (marked && k == hi - 1 && !line.endsWith("\n")) {
+                out.write("\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 codec in the style of LZ4: greedy matching through a
+ *  single hash table, byte-aligned sequences and no entropy coding.
+ *  It trades ratio for speed, so it suits repos on fast disks.
+ *
+ *  The stream is a series of blocks, each holding at most BLOCK_SIZE
+ *  bytes of input:  an int with the raw length (0 ends the stream),
+ *  an int with the compressed length (0 if the block is stored
+ *  raw), then the block's bytes.  A compressed block is a series of
+ *  sequences:  a token byte whose high nibble is the literal count and
+ *  low nibble the match length less MIN_MATCH (15 in either meaning
+ *  "more follows as 255-terminated bytes"), the literals, a two-byte
+ *  little-endian match offset and any extra match length bytes.  The
+ *  last sequence has literals only.
+ *  @author Yuan Sun
+ */
+class LzCodec implements Codec {
+
+    /** Largest amount of input compressed as one block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Shortest match worth encoding. */
+    private static final int MIN_MATCH = 4;
+    /** The last bytes of a block are always literals. */
+    private static final int LAST_LITERALS = 5;
+    /** Farthest back a match may start. */
+    private static final int MAX_OFFSET = 0xffff;
+    /** Log2 of the number of hash table slots. */
+    private static final int HASH_LOG = 14;
+    /** Multiplier of the Fibonacci hash over four-byte sequences. */
+    private static final int HASH_PRIME = -1640531535;
+    /** Nibble value meaning a length continues in later bytes. */
+    private static final int RUN_MASK = 15;
+    /** Level used when the configured one is the Deflater default. */
+    private static final int DEFAULT_LEVEL = 6;
+
+    @Override
+    public int id() {
+        return 2;
+    }
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out, int level) {
+        return new LzOutputStream(out, level);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return new LzInputStream(in);
+    }
+
+    /** Return the number of failed probes after which the match
+     *  finder starts skipping ahead, for compression LEVEL 1-9.
+     *  Higher levels skip later and so find more matches. */
+    static int skipTrigger(int level) {
+        if (level < 0) {
+            level = DEFAULT_LEVEL;
+        }
+        return 2 + Math.max(1, Math.min(level, 9));
+    }
+
+    /** Return the little-endian int at SRC[I..I+3]. */
+    private static int read32(byte[] src, int i) {
+        return (src[i] & 0xff) | (src[i + 1] & 0xff) << 8
+            | (src[i + 2] & 0xff) << 16 | (src[i + 3] & 0xff) << 24;
+    }
+
+    /** Return the hash table slot of the four-byte sequence SEQ. */
+    private static int hash(int seq) {
+        return (seq * HASH_PRIME) >>> (32 - HASH_LOG);
+    }
+
+    /** Write the length LEN, less the RUN_MASK already in the token,
+     *  into DST at OP as 255-terminated bytes.  Return the new OP. */
+    private static int writeRun(byte[] dst, int op, int len) {
+        len -= RUN_MASK;
+        while (len >= 255) {
+            dst[op++] = (byte) 255;
+            len -= 255;
+        }
+        dst[op++] = (byte) len;
+        return op;
+    }
+
+    /** Return the largest compressed size of LEN bytes of input. */
+    static int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    /** Compress SRC[0..LEN-1] into DST at SKIPTRIGGER, returning the
+     *  compressed length.  DST must hold maxCompressedLength(LEN). */
+    static int compressBlock(byte[] src, int len, byte[] dst,
+                             int skipTrigger) {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+        int anchor = 0, i = 0, op = 0;
+        int matchLimit = len - LAST_LITERALS;
+        while (i + MIN_MATCH <= matchLimit) {
+            int seq = read32(src, i);
+            int h = hash(seq);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || read32(src, ref) != seq) {
+                i += 1 + ((i - anchor) >>> skipTrigger);
+                continue;
+            }
+            while (i > anchor && ref > 0 && src[i - 1] == src[ref - 1]) {
+                i -= 1;
+                ref -= 1;
+            }
+            int matchLen = MIN_MATCH;
+            while (i + matchLen < matchLimit
+                   && src[ref + matchLen] == src[i + matchLen]) {
+                matchLen += 1;
+            }
+            int litLen = i - anchor;
+            int token = op++;
+            int ml = matchLen - MIN_MATCH;
+            dst[token] = (byte) (Math.min(litLen, RUN_MASK) << 4
+                                 | Math.min(ml, RUN_MASK));
+            if (litLen >= RUN_MASK) {
+                op = writeRun(dst, op, litLen);
+            }
+            System.arraycopy(src, anchor, dst, op, litLen);
+            op += litLen;
+            int offset = i - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            if (ml >= RUN_MASK) {
+                op = writeRun(dst, op, ml);
+            }
+            i += matchLen;
+            anchor = i;
+        }
+        int litLen = len - anchor;
+        dst[op++] = (byte) (Math.min(litLen, RUN_MASK) << 4);
+        if (litLen >= RUN_MASK) {
+            op = writeRun(dst, op, litLen);
+        }
+        System.arraycopy(src, anchor, dst, op, litLen);
+        return op + litLen;
+    }
+
+    /** Decompress SRC[0..SRCLEN-1] into DST, which must hold exactly
+     *  the RAWLEN bytes the block decodes to. */
+    static void decompressBlock(byte[] src, int srcLen, byte[] dst,
+                                int rawLen) throws IOException {
+        try {
+            int ip = 0, op = 0;
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int litLen = token >>> 4;
+                if (litLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+                if (ip >= srcLen) {
+                    break;
+                }
+                int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLen = token & RUN_MASK;
+                if (matchLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                int from = op - offset;
+                if (offset == 0 || from < 0) {
+                    throw new IOException("corrupt lz block");
+                }
+                if (offset >= matchLen) {
+                    System.arraycopy(dst, from, dst, op, matchLen);
+                    op += matchLen;
+                } else {
+                    for (int k = 0; k < matchLen; k += 1) {
+                        dst[op++] = dst[from + k];
+                    }
+                }
+            }
+            if (op != rawLen) {
+                throw new IOException("corrupt lz block");
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw new IOException("corrupt lz block");
+        }
+    }
+
+    /** Stream compressing into blocks. */
+    private static class LzOutputStream extends OutputStream {
+        /** Where blocks go. */
+        private final DataOutputStream _out;
+        /** Input waiting to be compressed. */
+        private final byte[] _buf = new byte[BLOCK_SIZE];
+        /** Compressed form of _buf. */
+        private final byte[] _packed =
+            new byte[maxCompressedLength(BLOCK_SIZE)];
+        /** Number of bytes in _buf. */
+        private int _len;
+        /** See skipTrigger. */
+        private final int _skipTrigger;
+        /** True once closed. */
+        private boolean _closed;
+
+        /** A stream compressing into OUT at LEVEL. */
+        LzOutputStream(OutputStream out, int level) {
+            _out = new DataOutputStream(out);
+            _skipTrigger = skipTrigger(level);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_len == _buf.length) {
+                writeBlock();
+            }
+            _buf[_len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_len == _buf.length) {
+                    writeBlock();
+                }
+                int n = Math.min(len, _buf.length - _len);
+                System.arraycopy(b, off, _buf, _len, n);
+                _len += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /** Compress and write out the buffered input, if any. */
+        private void writeBlock() throws IOException {
+            if (_len == 0) {
+                return;
+            }
+            int n = compressBlock(_buf, _len, _packed, _skipTrigger);
+            _out.writeInt(_len);
+            if (n < _len) {
+                _out.writeInt(n);
+                _out.write(_packed, 0, n);
+            } else {
+                _out.writeInt(0);
+                _out.write(_buf, 0, _len);
+            }
+            _len = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_closed) {
+                _closed = true;
+                writeBlock();
+                _out.writeInt(0);
+                _out.close();
+            }
+        }
+    }
+
+    /** Stream decompressing blocks. */
+    private static class LzInputStream extends InputStream {
+        /** Where blocks come from. */
+        private final DataInputStream _in;
+        /** The current decompressed block. */
+        private final byte[] _buf = new byte[BLOCK_SIZE];
+        /** Compressed bytes of the current block. */
+        private final byte[] _packed =
+            new byte[maxCompressedLength(BLOCK_SIZE)];
+        /** Number of bytes in _buf. */
+        private int _len;
+        /** Position of the next byte in _buf. */
+        private int _pos;
+        /** True once the end-of-stream block has been read. */
+        private boolean _eof;
+
+        /** A stream decompressing the blocks in IN. */
+        LzInputStream(InputStream in) {
+            _in = new DataInputStream(in);
+        }
+
+        /** Read the next block, returning false at the end of stream. */
+        private boolean fill() throws IOException {
+            if (_eof) {
+                return false;
+            }
+            int rawLen = _in.readInt();
+            if (rawLen == 0) {
+                _eof = true;
+                return false;
+            }
+            if (rawLen < 0 || rawLen > BLOCK_SIZE) {
+                throw new IOException("corrupt lz stream");
+            }
+            int n = _in.readInt();
+            if (n == 0) {
+                _in.readFully(_buf, 0, rawLen);
+            } else {
+                if (n < 0 || n > _packed.length) {
+                    throw new IOException("corrupt lz stream");
+                }
+                _in.readFully(_packed, 0, n);
+                decompressBlock(_packed, n, _buf, rawLen);
+            }
+            _len = rawLen;
+            _pos = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_pos == _len && !fill()) {
+                return -1;
+            }
+            return _buf[_pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (_pos == _len && !fill()) {
+                return -1;
+            }
+            int n = Math.min(len, _len - _pos);
+            System.arraycopy(_buf, _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return _len - _pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
+}
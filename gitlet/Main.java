@@ -1,23 +1,48 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Serializable;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Yuan Sun
  */
 public class Main {
+    /** Files modified less than this many milliseconds ago are copied
+     *  to the log even if their size and time match. */
+    private static final long RACY_MILLIS = 2000;
+
     /** working dir. */
     private static String _workingDir = System.getProperty("user.dir");
 
@@ -34,6 +59,11 @@ public class Main {
     private static Path _blobPath;
     /** .tempBlob. */
     private static Path _tempBlobPath;
+    /** .chunks. */
+    private static Path _chunkPath;
+
+    /** files in cwd when the command started. */
+    private static HashSet<String> _workingFiles = new HashSet<>();
 
     /** files in cwd justAdded. */
     private static HashSet<String> _justAdded
@@ -68,7 +98,7 @@ public class Main {
     /** check modified on disk.
      * given FILENAMES. */
     public static void modifedOnDisk(
-            List<String> fileNames) {
+            Collection<String> fileNames) {
         Commit current = _allCommits.getCurrentCommit();
         HashMap<String, String> allTracked = current.getAllBlobs();
         HashMap<String, String> addStage = _allStages.getAddStage();
@@ -91,6 +121,12 @@ public class Main {
         }
     }
 
+    /** Return the plain files in the working directory when the
+     *  command started. */
+    public static HashSet<String> getWorkingFiles() {
+        return _workingFiles;
+    }
+
     /** return files. */
     public static HashSet<String> getNewFiles() {
         return _justAdded;
@@ -110,10 +146,12 @@ public class Main {
         _commitPath = Paths.get(String.valueOf(_gitPath), ".commits");
         _blobPath = Paths.get(String.valueOf(_gitPath), ".blobs");
         _tempBlobPath = Paths.get(String.valueOf(_gitPath), ".tempBlobs");
+        _chunkPath = Paths.get(String.valueOf(_gitPath), ".chunks");
         _gitPath.toFile().mkdirs();
         _commitPath.toFile().mkdirs();
         _blobPath.toFile().mkdirs();
         _tempBlobPath.toFile().mkdirs();
+        _chunkPath.toFile().mkdirs();
     }
 
     /** gitlet init. */
@@ -135,6 +173,65 @@ public class Main {
         _allStages.add(fileName, _allCommits.getCurrentCommit());
     }
 
+    /** add PATTERNS: file names, glob patterns matched against the files
+     *  of the working directory, or -A for all of them plus the removal
+     *  of tracked files that are gone.  Nothing is staged unless every
+     *  pattern names or matches some file. */
+    public static void add(String[] patterns) {
+        List<String> working = workingFiles();
+        TreeSet<String> fileNames = new TreeSet<>();
+        boolean all = false;
+        for (String pattern: patterns) {
+            if (pattern.equals("-A")) {
+                all = true;
+                fileNames.addAll(working);
+            } else if (isGlob(pattern)) {
+                PathMatcher matcher = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + pattern);
+                boolean found = false;
+                for (String fileName: working) {
+                    if (matcher.matches(Paths.get(fileName))) {
+                        fileNames.add(fileName);
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    System.out.println("file does not exist.");
+                    System.exit(0);
+                }
+            } else if (!Utils.join(getWorkingDir(), pattern).exists()) {
+                System.out.println("file does not exist.");
+                System.exit(0);
+            } else {
+                fileNames.add(pattern);
+            }
+        }
+        _allStages.addAll(new ArrayList<>(fileNames));
+        if (all) {
+            _allStages.stageMissing(working);
+        }
+    }
+
+    /** Return true iff PATTERN has glob metacharacters. */
+    private static boolean isGlob(String pattern) {
+        for (char c: "*?[{".toCharArray()) {
+            if (pattern.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the plain files of the working directory, less gitlet's
+     *  own state. */
+    private static List<String> workingFiles() {
+        List<String> result = new ArrayList<>(
+                Utils.plainFilenamesIn(_workingDir));
+        result.remove("commitsConfig.bin");
+        result.remove("stagingConfig.bin");
+        return result;
+    }
+
     /** commit MSG. */
     public static void commit(String msg) {
         if (msg.equals("")) {
@@ -162,32 +259,191 @@ public class Main {
         _allCommits.rmBranch(name);
     }
 
-    /** log. */
-    public static void log() {
-        Main._allCommits.log();
+    /** log [-n N] [--skip N] [--since DATE] [--until DATE] [-- PATH],
+     *  given as ARGS. */
+    public static void log(String[] args) {
+        int skip = 0, limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        String path = null;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new NumberFormatException();
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--":
+                    path = value;
+                    if (i + 2 != args.length) {
+                        throw new NumberFormatException();
+                    }
+                    break;
+                case "-n":
+                    limit = Integer.parseInt(value);
+                    break;
+                case "--skip":
+                    skip = Integer.parseInt(value);
+                    break;
+                case "--since":
+                    since = parseDate(value);
+                    break;
+                case "--until":
+                    until = parseDate(value);
+                    break;
+                default:
+                    throw new NumberFormatException();
+                }
+            }
+            if (skip < 0 || limit < 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        if (path == null) {
+            Main._allCommits.log(skip, limit, since, until);
+        } else {
+            Main._allCommits.log(skip, limit, since, until, path);
+        }
+    }
+
+    /** Return DATE, given as yyyy-MM-dd, yyyy-MM-dd HH:mm:ss in local
+     *  time or as log shows dates, in milliseconds since the epoch.
+     *  Throws NumberFormatException if it has none of these forms. */
+    static long parseDate(String date) {
+        for (String format : new String[] {
+                "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd", Commit.TIME_FORMAT}) {
+            SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            ParsePosition pos = new ParsePosition(0);
+            Date parsed = parser.parse(date, pos);
+            if (parsed != null && pos.getIndex() == date.length()) {
+                return parsed.getTime();
+            }
+        }
+        throw new NumberFormatException(date);
+    }
+
+    /** global-log [--limit N] [--since DATE] [--until DATE], given as
+     *  ARGS. */
+    public static void globalLog(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new NumberFormatException();
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                case "--limit":
+                    limit = Integer.parseInt(value);
+                    break;
+                case "--since":
+                    since = parseDate(value);
+                    break;
+                case "--until":
+                    until = parseDate(value);
+                    break;
+                default:
+                    throw new NumberFormatException();
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        Main._allCommits.globalLog(limit, since, until);
     }
 
-    /** global-log. */
-    public static void globalLog() {
-        Main._allCommits.globalLog();
+    /** Return a buffered writer on the standard output.  Its checkError
+     *  turns true once the output is closed, as when piped into head. */
+    public static PrintWriter output() {
+        System.out.flush();
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out))));
     }
 
-    /** status. */
-    public static void status() {
-        List<String> cwd = Utils.plainFilenamesIn(
-                _workingDir);
-        modifedOnDisk(cwd);
-        HashMap<String, String> allBlobs =
-                _allStages.getTrackedBlobs();
-        HashMap<String, String> removed = _allStages.getRemoveStage();
-        List<String> works = Utils.plainFilenamesIn(Main.getWorkingDir());
-        Main._allCommits.status();
-        Main._allStages.status();
+    /** status [--renames], given as ARGS. */
+    public static void status(String[] args) {
+        boolean renames = args.length == 2 && args[1].equals("--renames");
+        if (args.length > 2 || args.length == 2 && !renames) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        modifedOnDisk(_workingFiles);
+        PrintWriter out = output();
+        Main._allCommits.status(out);
+        Main._allStages.status(out, renames);
+        out.flush();
     }
 
-    /** find MSG. */
-    public static void find(String msg) {
-        Main._allCommits.findMsg(msg);
+    /** diff [--name-status] [--histogram | --myers] [COMMIT [COMMIT]],
+     *  given as ARGS. */
+    public static void diff(String[] args) {
+        boolean histogram = false, nameStatus = false;
+        List<String> revs = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--name-status")) {
+                nameStatus = true;
+            } else if (args[i].equals("--histogram")) {
+                histogram = true;
+            } else if (args[i].equals("--myers")) {
+                histogram = false;
+            } else {
+                revs.add(args[i]);
+            }
+        }
+        if (revs.size() > 2) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        Main._allCommits.diff(revs.size() > 0 ? revs.get(0) : null,
+                              revs.size() > 1 ? revs.get(1) : null,
+                              histogram, nameStatus);
+    }
+
+    /** bisect start [BAD [GOOD...]] | bad [COMMIT] | good [COMMIT...] |
+     *  skip [COMMIT...] | run SCRIPT [ARG...] | reset, given as ARGS. */
+    public static void bisect(String[] args) {
+        List<String> rest = Arrays.asList(args).subList(2, args.length);
+        switch (args[1]) {
+        case "start":
+            Bisect.start(rest);
+            break;
+        case "bad":
+        case "good":
+        case "skip":
+            Bisect.mark(args[1], rest);
+            break;
+        case "run":
+            if (rest.isEmpty()) {
+                System.out.println("Incorrect operands.");
+                System.exit(0);
+            }
+            Bisect.run(rest);
+            break;
+        case "reset":
+            Bisect.reset();
+            break;
+        default:
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+    }
+
+    /** find, with ARGS find [--token | --substring] QUERY. */
+    public static void find(String[] args) {
+        if (args.length == 2) {
+            Main._allCommits.findMsg("", args[1]);
+        } else if (args.length == 3 && (args[1].equals("--token")
+                                        || args[1].equals("--substring"))) {
+            Main._allCommits.findMsg(args[1], args[2]);
+        } else {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
     }
 
     /** return .gitlet path. */
@@ -210,6 +466,11 @@ public class Main {
         return _tempBlobPath.toString();
     }
 
+    /** return .chunks path. */
+    public static String getChunkPath() {
+        return _chunkPath.toString();
+    }
+
     /** return working path. */
     public static String getWorkingDir() {
         return _workingDir;
@@ -264,8 +525,8 @@ public class Main {
                    && _gitPath == null) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
-        } else if (command.equals("add") && args.length == 2) {
-            add(args[1]);
+        } else if (command.equals("add") && args.length >= 2) {
+            add(Arrays.copyOfRange(args, 1, args.length));
         } else if (command.equals(("commit")) && args.length == 2) {
             commit(args[1]);
         } else if (command.equals("rm")) {
@@ -273,13 +534,22 @@ public class Main {
         } else if (command.equals("checkout")) {
             checkoutCommand(args);
         } else if (command.equals("log")) {
-            log();
+            log(args);
         } else if (command.equals("global-log")) {
-            globalLog();
-        } else if (command.equals("find") && args.length == 2) {
-            find(args[1]);
+            globalLog(args);
+        } else if (command.equals("diff")) {
+            diff(args);
+        } else if (command.equals("blame") && args.length == 2) {
+            _allCommits.blame(args[1]);
+        } else if (command.equals("bisect") && args.length >= 2) {
+            bisect(args);
+        } else if (command.equals("find")) {
+            find(args);
         } else if (command.equals("status")) {
-            status();
+            status(args);
+        } else if (command.equals("branch") && args.length == 2
+                   && args[1].equals("-v")) {
+            _allCommits.listBranches();
         } else if (command.equals("branch") && args.length == 2) {
             branch(args[1]);
         } else if (command.equals("rm-branch") && args.length == 2) {
@@ -288,6 +558,17 @@ public class Main {
             reset(args[1]);
         } else if (command.equals("merge") && args.length == 2) {
             merge(args[1]);
+        } else if (command.equals("merge-tree") && args.length == 3) {
+            _allCommits.mergeTree(args[1], args[2]);
+        } else if (command.equals("merge-base")) {
+            mergeBase(args);
+        } else if (command.equals("repack") && args.length == 1) {
+            repack();
+        } else if (command.equals("migrate-blobs") && args.length == 1) {
+            Migration.blobIdentity();
+        } else if (command.equals("config")
+                   && (args.length == 2 || args.length == 3)) {
+            config(args);
         } else {
             runRemoteCommands(args);
         }
@@ -309,11 +590,8 @@ public class Main {
     /** Given REMOTENAME, return remoteTrees. */
     public static CommitsTree getRemoteTree(String remoteName) {
         String remotePath = getRemoteDir().get(remoteName);
-        File treeConfig = Paths.get(
-                remotePath, "commitsConfig.bin").toFile();
-
-        CommitsTree remoteTrees = Utils.readObject(
-                treeConfig, CommitsTree.class);
+        CommitsTree remoteTrees = (CommitsTree) read(
+                remotePath, "commitsConfig.bin");
         return remoteTrees;
     }
 
@@ -323,6 +601,12 @@ public class Main {
         return Utils.join(remotePath, ".blobs").toString();
     }
 
+    /** return .chunks under REMOTEPATH. */
+    public static String getRemoteChunks(String remotePath) {
+        remotePath = Paths.get(remotePath, ".gitlet").toString();
+        return Utils.join(remotePath, ".chunks").toString();
+    }
+
     /** return allBranches in REMOTETREES. */
     public static HashMap<String, String> getAllRemoteBranches(
             CommitsTree remoteTrees
@@ -442,11 +726,70 @@ public class Main {
         return _remoteDir;
     }
 
+    /** repack: pack all blobs, storing versions of a file as deltas. */
+    public static void repack() {
+        HashMap<String, String> paths = new HashMap<>();
+        for (Object obj: readAll(getCommitPath())) {
+            Commit commit = (Commit) obj;
+            for (Map.Entry<String, String> kv
+                     : commit.getAllBlobs().entrySet()) {
+                paths.putIfAbsent(kv.getValue(), kv.getKey());
+            }
+        }
+        int[] counts = Pack.repack(getBlobPath(), paths);
+        System.out.println("Packed " + counts[0] + " objects, "
+                           + counts[1] + " as deltas.");
+    }
+
+    /** config KEY [VALUE], given as ARGS.
+     *  Prints the setting of KEY, or sets it to VALUE. */
+    public static void config(String[] args) {
+        String key = args[1];
+        if (args.length == 2) {
+            String value = Config.get(key, null);
+            if (value != null) {
+                System.out.println(value);
+            }
+            return;
+        }
+        try {
+            if (key.equals("core.compression")) {
+                Compression.forName(args[2]);
+            } else if (key.equals("core.compressionLevel")) {
+                int level = Integer.parseInt(args[2]);
+                if (level < -1 || level > 9) {
+                    throw Utils.error("Level must be from -1 to 9.");
+                }
+            }
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            System.exit(0);
+        } catch (NumberFormatException e) {
+            System.out.println("Level must be from -1 to 9.");
+            System.exit(0);
+        }
+        Config.set(key, args[2]);
+    }
+
     /** command for merge BRANCHNAME. */
     public static void merge(String branchName) {
         _allCommits.merge(branchName);
     }
 
+    /** merge-base A B | --stats, given as ARGS. */
+    public static void mergeBase(String[] args) {
+        if (args.length == 3) {
+            _allCommits.mergeBase(args[1], args[2]);
+        } else if (args.length == 2 && args[1].equals("--stats")) {
+            PrintWriter out = output();
+            MergeBases.open().stats(out);
+            out.flush();
+        } else {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+    }
+
     /** command for reset COMMITID. */
     public static void reset(String commitID) {
         _allCommits.reset(commitID);
@@ -472,40 +815,84 @@ public class Main {
         _allCommits.checkoutFile(fileName);
     }
 
-    /** Return all files read in a PATH. */
+    /** Return all objects read in object directory PATH. */
     public static ArrayList<Object> readAll(String path) {
         ArrayList<Object> objs = new ArrayList<>();
-        List<String> names = Utils.plainFilenamesIn(path);
-        for (String name: names) {
+        for (String name: ObjectStore.looseIds(path)) {
             objs.add(read(path, name));
         }
         return objs;
     }
 
-    /** Return the object read, given PATH and FILENAME. */
+    /** Return the file FILENAME in PATH, which is in its shard of PATH
+     *  if FILENAME is an object ID. */
+    private static File locate(String path, String fileName) {
+        if (ObjectStore.isObjectID(fileName)) {
+            return ObjectStore.file(path, fileName);
+        }
+        return Utils.join(path, fileName);
+    }
+
+    /** Return the object read, given PATH and FILENAME.
+     *  The file is decompressed with whichever codec wrote it.
+     *  Objects that have been packed are read from PATH's packs. */
     public static Object read(String path, String fileName) {
         Object obj = null;
-        String file = Utils.join(path, fileName).toString();
-        File inFile = new File(file);
         try {
-            ObjectInputStream inp =
-                    new ObjectInputStream(new FileInputStream(inFile));
-            obj = inp.readObject();
-            inp.close();
+            obj = readObject(path, fileName);
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("IO except" + e.getMessage());
         }
         return obj;
     }
 
-    /** Write OBJ with FILENAME to a PATH. */
+    /** Return the object read, given PATH and FILENAME, as read does,
+     *  or null without a word if it cannot be read. */
+    static Object readQuietly(String path, String fileName) {
+        try {
+            return readObject(path, fileName);
+        } catch (IOException | ClassNotFoundException
+                 | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Return the object read, given PATH and FILENAME. */
+    private static Object readObject(String path, String fileName)
+        throws IOException, ClassNotFoundException {
+        File inFile = locate(path, fileName);
+        InputStream in;
+        byte[] packed = null;
+        if (!inFile.exists()) {
+            packed = Pack.find(path, fileName);
+        }
+        if (packed != null) {
+            in = new ByteArrayInputStream(packed);
+        } else {
+            in = Compression.open(new BufferedInputStream(
+                    new FileInputStream(inFile)));
+        }
+        ObjectInputStream inp = new ObjectInputStream(in);
+        Object obj = inp.readObject();
+        inp.close();
+        return obj;
+    }
+
+    /** Write OBJ with FILENAME to a PATH,
+     *  compressed with the configured codec. */
     public static void write(String path, String fileName, Object obj) {
-        File f = Utils.join(path, fileName);
-        String file = f.toString();
-        File outFile = new File(file);
+        File outFile;
+        if (ObjectStore.isObjectID(fileName)) {
+            outFile = ObjectStore.fileForWrite(path, fileName);
+        } else {
+            outFile = Utils.join(path, fileName);
+            outFile.getParentFile().mkdirs();
+        }
         try {
             ObjectOutputStream out =
-                    new ObjectOutputStream(new FileOutputStream(outFile));
+                    new ObjectOutputStream(Compression.wrap(
+                            new BufferedOutputStream(
+                                    new FileOutputStream(outFile))));
             out.writeObject(obj);
             out.close();
         } catch (IOException e) {
@@ -515,7 +902,7 @@ public class Main {
 
     /** check deleted upon FILES and CWD. */
     public static void checkDeleted(HashSet<String> cwd,
-                                    List<String> files) {
+                                    Collection<String> files) {
         if (_allStages == null) {
             System.out.println("Not in an initialized Gitlet directory.");System.exit(0);
             return;
@@ -539,12 +926,39 @@ public class Main {
         return lastTime;
     }
 
+    /** Copy FILE of the working directory into the log, unless the copy
+     *  there already has its size and modification time.  Files changed
+     *  in the last RACY_MILLIS are always copied, since a second change
+     *  within the file system's timestamp granularity would otherwise go
+     *  unseen. */
+    private static void updateLog(String file) {
+        Path f = Paths.get(_workingDir, file);
+        Path exact = Paths.get(_workingDir, "logs", file);
+        try {
+            BasicFileAttributes now =
+                Files.readAttributes(f, BasicFileAttributes.class);
+            long modified = now.lastModifiedTime().toMillis();
+            try {
+                BasicFileAttributes old =
+                    Files.readAttributes(exact, BasicFileAttributes.class);
+                if (old.size() == now.size()
+                    && old.lastModifiedTime().toMillis() == modified
+                    && System.currentTimeMillis() - modified > RACY_MILLIS) {
+                    return;
+                }
+            } catch (NoSuchFileException e) {
+                /* Not in the log yet. */
+            }
+            Files.copy(f, exact,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.COPY_ATTRIBUTES);
+        } catch (IOException e) {
+            System.out.println("IO except" + e.getMessage());
+        }
+    }
+
     /** setup helper. */
     public static void setUp() {
-        _allCommits = (CommitsTree) Main.read(_workingDir,
-                "commitsConfig.bin");
-        _allStages = (Staging) Main.read(_workingDir,
-                "stagingConfig.bin");
         _gitPath = Paths.get(_workingDir,
                 ".gitlet");
         _commitPath = Paths.get(String.valueOf(_gitPath),
@@ -553,6 +967,19 @@ public class Main {
                 ".blobs");
         _tempBlobPath = Paths.get(String.valueOf(_gitPath),
                 ".tempBlobs");
+        _chunkPath = Paths.get(String.valueOf(_gitPath),
+                ".chunks");
+        _allCommits = (CommitsTree) Main.read(_workingDir,
+                "commitsConfig.bin");
+        _allStages = Staging.load();
+    }
+
+    /** Write the commits tree and the staging area out. */
+    public static void saveState() {
+        write(_workingDir, "commitsConfig.bin", _allCommits);
+        if (_allStages != null) {
+            _allStages.save();
+        }
     }
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
@@ -561,18 +988,18 @@ public class Main {
         try {
             File commitsConfigFile = Paths.get(_workingDir,
                     "commitsConfig.bin").toFile();
-            File stagingConfigFile = Paths.get(_workingDir,
-                    "stagingConfig.bin").toFile();
             File remoteFile = Paths.get(_workingDir,
                     "remote").toFile();
             HashSet<String> cwd =
                     new HashSet<>(Utils.plainFilenamesIn(_workingDir));
+            _workingFiles = cwd;
             File lastTime = Paths.get(_workingDir, "logs").toFile();
-            if (commitsConfigFile.exists() && stagingConfigFile.exists()) {
+            if (commitsConfigFile.exists()) {
                 setUp();
             }
             if (lastTime.exists()) {
-                List<String> files = Utils.plainFilenamesIn(lastTime);
+                HashSet<String> files =
+                        new HashSet<>(Utils.plainFilenamesIn(lastTime));
                 for (String file: cwd) {
                     if (!files.contains(file)) {
                         _justAdded.add(file);
@@ -596,8 +1023,7 @@ public class Main {
                 remoteFile.mkdirs();
             }
             runCommands(args);
-            write(_workingDir, "commitsConfig.bin", _allCommits);
-            write(_workingDir, "stagingConfig.bin", _allStages);
+            saveState();
             cwd = new HashSet<>(Utils.plainFilenamesIn(_workingDir));
             List<String> files = Utils.plainFilenamesIn(lastTime);
             for (String file: files) {
@@ -607,11 +1033,7 @@ public class Main {
                 }
             }
             for (String file: cwd) {
-                File f = Paths.get(_workingDir, file).toFile();
-                File log = getLog();
-                File exact = Utils.join(log, file);
-                String contents = Utils.readContentsAsString(f);
-                Utils.writeContents(exact, contents);
+                updateLog(file);
             }
         } catch (NullPointerException e) {
             System.out.println(e);
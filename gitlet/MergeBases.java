@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/** Merge bases of pairs of commits, and how far each commit of a pair
+ *  is from the other, kept from one command to the next.
+ *
+ *  Both are found in one walk back from the two commits (see
+ *  CommitGraph.paint):  the merge base is the newest commit reachable
+ *  from both, and the counts are of the commits reachable from one and
+ *  not the other.  Commits never change, so neither do these, and an
+ *  entry need never be invalidated; the cache only forgets the pairs
+ *  least recently used once it holds ENTRIES of them.  It is kept in
+ *  the gitlet directory as FILE, together with the numbers of lookups
+ *  it has answered and missed, which merge-base --stats shows.
+ *  @author Yuan Sun
+ */
+class MergeBases implements Serializable {
+
+    /** Kept fixed so that the cache survives a rebuild. */
+    private static final long serialVersionUID = -2291646702411786315L;
+    /** Name of the cache file. */
+    static final String FILE = "merge-bases";
+    /** Most pairs kept. */
+    static final int ENTRIES = 4096;
+
+    /** Open caches, by gitlet directory. */
+    private static final HashMap<String, MergeBases> OPEN = new HashMap<>();
+
+    /** What is known of a pair of commits. */
+    private static final class Entry implements Serializable {
+        /** Kept fixed so that the cache survives a rebuild. */
+        private static final long serialVersionUID = 6125410436094216374L;
+        /** The merge base, or null if the histories never meet. */
+        private final String _base;
+        /** Commits reachable from the first commit of the pair only, and
+         *  from the second only. */
+        private final int[] _only;
+
+        /** A pair with merge base BASE and counts ONLY. */
+        Entry(String base, int[] only) {
+            _base = base;
+            _only = only;
+        }
+    }
+
+    /** Entries by pair, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Lookups answered from the cache. */
+    private long _hits;
+    /** Lookups that walked the commit graph. */
+    private long _misses;
+    /** The gitlet directory. */
+    private transient String _dir;
+
+    /** Return the cache of this repository, reading it on first use. */
+    static MergeBases open() {
+        String dir = Main.getGitPath();
+        MergeBases result = OPEN.get(dir);
+        if (result == null) {
+            File file = Utils.join(dir, FILE);
+            if (file.isFile()) {
+                result = (MergeBases) Main.read(dir, FILE);
+            } else {
+                result = new MergeBases();
+            }
+            result._dir = dir;
+            OPEN.put(dir, result);
+        }
+        return result;
+    }
+
+    /** Discard the cache of gitlet directory DIR. */
+    static void discard(String dir) {
+        OPEN.remove(dir);
+        Utils.join(dir, FILE).delete();
+    }
+
+    /** Return the merge base of commits A and B, or null if their
+     *  histories never meet. */
+    String base(String a, String b) {
+        return lookup(a, b)._base;
+    }
+
+    /** Return {ahead, behind}:  the numbers of commits reachable from
+     *  OURS and not from THEIRS, and from THEIRS and not from OURS. */
+    int[] aheadBehind(String ours, String theirs) {
+        int[] only = lookup(ours, theirs)._only;
+        if (ours.compareTo(theirs) > 0) {
+            return new int[] {only[1], only[0]};
+        }
+        return only.clone();
+    }
+
+    /** Write the cache out. */
+    void save() {
+        Main.write(_dir, FILE, this);
+    }
+
+    /** Print the size of the cache and how often it has been hit to
+     *  OUT. */
+    void stats(PrintWriter out) {
+        long lookups = _hits + _misses;
+        out.println("entries: " + _entries.size() + " of " + ENTRIES);
+        out.println("lookups: " + lookups);
+        out.printf("hits: %d (%.1f%%)%n", _hits,
+                   lookups == 0 ? 0.0 : 100.0 * _hits / lookups);
+        out.println("misses: " + _misses);
+    }
+
+    /** Return the entry of commits A and B, walking the commit graph if
+     *  it is not cached.  The pair is kept in order of ID. */
+    private Entry lookup(String a, String b) {
+        if (a.compareTo(b) > 0) {
+            return lookup(b, a);
+        }
+        String key = a + " " + b;
+        Entry result = _entries.get(key);
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        _misses += 1;
+        result = walk(a, b);
+        _entries.put(key, result);
+        while (_entries.size() > ENTRIES) {
+            _entries.remove(_entries.keySet().iterator().next());
+        }
+        return result;
+    }
+
+    /** Return the entry of commits A and B, found from the commit
+     *  graph. */
+    private static Entry walk(String a, String b) {
+        int[] only = new int[2];
+        if (a.equals(b)) {
+            return new Entry(a, only);
+        }
+        String[] base = new String[1];
+        CommitGraph graph = CommitGraph.open();
+        String waiting = graph.paint(Arrays.asList(a, b), new int[] {1, 2},
+                                     3, (id, marks) -> {
+                if (marks != 3) {
+                    only[marks - 1] += 1;
+                } else if (base[0] == null) {
+                    base[0] = id;
+                }
+            });
+        graph.save();
+        return new Entry(base[0] != null ? base[0] : waiting, only);
+    }
+}
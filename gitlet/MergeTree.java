@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/** The merge of two commits, worked out from the object store alone:
+ *  neither the working directory nor the staging area is read or
+ *  written, so that a merge can be tried in a repository no one works
+ *  in.  For each file whose blob is not the same at the split point and
+ *  in both heads (see TreeDiff),
+ *      changed in one head only, it takes that head's version, which
+ *          may be its absence;
+ *      changed the same way in both, it takes that version;
+ *      changed differently in both, it is merged line by line (see
+ *          LineMerge), and if the edits overlap, or the file was
+ *          deleted in one head or added in both, it is a conflict and
+ *          takes the version with conflict markers.
+ *  Files are followed across renames (see Renames):  a file renamed in
+ *  one head and still under its old name in the other is merged under
+ *  its new name.
+ *  The result is kept as the changes to make to the current head, and
+ *  the blobs it needs that the store may not have.  Files changed in
+ *  both heads are read and merged on the common fork-join pool, whose
+ *  idle threads steal from busy ones, so that a few large files do not
+ *  hold up the rest; blobs are made from the results afterwards on the
+ *  calling thread, in order of name, so the outcome does not depend on
+ *  the schedule.
+ *  @author Yuan Sun
+ */
+class MergeTree {
+
+    /** Fewest files changed in both heads that are merged in
+     *  parallel. */
+    static final int PARALLEL_MIN = 4;
+
+    /** Blob IDs of the files changed from the current head, by name. */
+    private final HashMap<String, String> _update = new HashMap<>();
+    /** Blob IDs in the current head of the files deleted, by name. */
+    private final HashMap<String, String> _remove = new HashMap<>();
+    /** Contents of the files in conflict, by name, in order. */
+    private final TreeMap<String, String> _conflicts = new TreeMap<>();
+    /** Blobs made by the merge, by ID. */
+    private final HashMap<String, Blob> _blobs = new HashMap<>();
+    /** The files of the merged tree. */
+    private final HashMap<String, String> _tree;
+
+    /** The merge of commits OURS and THEIRS, whose split point is
+     *  BASE.  The files changed in both heads are merged in parallel if
+     *  PARALLEL; their results are taken in order of name. */
+    private MergeTree(Commit base, Commit ours, Commit theirs,
+                      boolean parallel) {
+        HashMap<String, String> baseBlobs = base.getAllBlobs();
+        HashMap<String, String> ourBlobs = ours.getAllBlobs();
+        HashMap<String, String> theirBlobs = theirs.getAllBlobs();
+        TreeMap<String, String> ourMoves = renames(baseBlobs, ourBlobs);
+        TreeMap<String, String> theirMoves = renames(baseBlobs, theirBlobs);
+        TreeMap<String, String> followed = new TreeMap<>();
+        if (!ourMoves.isEmpty() || !theirMoves.isEmpty()) {
+            baseBlobs = new HashMap<>(baseBlobs);
+            HashMap<String, String> ourView = new HashMap<>(ourBlobs);
+            theirBlobs = new HashMap<>(theirBlobs);
+            for (Map.Entry<String, String> kv : ourMoves.entrySet()) {
+                if (theirBlobs.containsKey(kv.getValue())
+                    && !theirBlobs.containsKey(kv.getKey())) {
+                    move(baseBlobs, kv.getValue(), kv.getKey());
+                    move(theirBlobs, kv.getValue(), kv.getKey());
+                }
+            }
+            for (Map.Entry<String, String> kv : theirMoves.entrySet()) {
+                if (ourView.containsKey(kv.getValue())
+                    && !ourView.containsKey(kv.getKey())) {
+                    move(baseBlobs, kv.getValue(), kv.getKey());
+                    move(ourView, kv.getValue(), kv.getKey());
+                    followed.put(kv.getKey(), kv.getValue());
+                }
+            }
+            ourBlobs = ourView;
+        }
+        List<String> names = new ArrayList<>();
+        List<String[]> both = new ArrayList<>();
+        TreeDiff.join(Arrays.asList(baseBlobs, ourBlobs, theirBlobs),
+            (name, ids) -> {
+                if (!decide(name, ids[0], ids[1], ids[2])) {
+                    names.add(name);
+                    both.add(ids);
+                }
+            });
+        String[] merged = new String[both.size()];
+        boolean[] conflict = new boolean[both.size()];
+        IntStream range = IntStream.range(0, both.size());
+        if (parallel && both.size() >= PARALLEL_MIN) {
+            range = range.parallel();
+        }
+        range.forEach(i -> {
+            String[] ids = both.get(i);
+            StringWriter out = new StringWriter();
+            conflict[i] = merge(ids[0], ids[1], ids[2], out);
+            merged[i] = out.toString();
+        });
+        for (int i = 0; i < merged.length; i += 1) {
+            if (conflict[i]) {
+                _conflicts.put(names.get(i), merged[i]);
+            }
+            take(names.get(i), both.get(i)[1], store(merged[i]));
+        }
+        for (Map.Entry<String, String> kv : followed.entrySet()) {
+            _update.putIfAbsent(kv.getKey(), ourBlobs.get(kv.getKey()));
+            _remove.put(kv.getValue(), ours.getAllBlobs().get(kv.getValue()));
+        }
+        ourBlobs = ours.getAllBlobs();
+        _tree = new HashMap<>(ourBlobs);
+        _tree.putAll(_update);
+        _tree.keySet().removeAll(_remove.keySet());
+    }
+
+    /** Return the merge of commits OURS and THEIRS, whose split point
+     *  is BASE. */
+    static MergeTree merge(Commit base, Commit ours, Commit theirs) {
+        return new MergeTree(base, ours, theirs, true);
+    }
+
+    /** Return the merge of commits OURS and THEIRS, whose split point
+     *  is BASE, merging the contents of files on one thread unless
+     *  PARALLEL. */
+    static MergeTree merge(Commit base, Commit ours, Commit theirs,
+                           boolean parallel) {
+        return new MergeTree(base, ours, theirs, parallel);
+    }
+
+    /** Return the blob IDs of the files the merge adds or changes in the
+     *  current head, by name. */
+    HashMap<String, String> update() {
+        return _update;
+    }
+
+    /** Return the current head's blob IDs of the files the merge
+     *  deletes, by name. */
+    HashMap<String, String> remove() {
+        return _remove;
+    }
+
+    /** Return the contents of the files in conflict, by name. */
+    TreeMap<String, String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Return the files of the merged tree, by name. */
+    HashMap<String, String> tree() {
+        return _tree;
+    }
+
+    /** Return the contents of blob ID, which is in the merged tree. */
+    String contents(String id) {
+        Blob blob = _blobs.get(id);
+        if (blob == null) {
+            blob = (Blob) Main.read(Main.getBlobPath(), id);
+        }
+        return blob.getContents();
+    }
+
+    /** Write each blob made by the merge that is not in the blob store
+     *  to DIR. */
+    void writeBlobs(String dir) {
+        for (Map.Entry<String, Blob> kv : _blobs.entrySet()) {
+            if (!ObjectStore.contains(Main.getBlobPath(), kv.getKey())
+                && !ObjectStore.contains(dir, kv.getKey())) {
+                Main.write(dir, kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /** Decide file NAME, whose blob IDs at the split point and in the
+     *  current and given heads are BASE, OURS and THEIRS, any of which
+     *  is null if that commit lacks it.  Return false if it was changed
+     *  differently in both heads, so that its contents must be merged. */
+    private boolean decide(String name, String base, String ours,
+                           String theirs) {
+        if (same(ours, theirs) || same(base, theirs)) {
+            return true;
+        } else if (same(base, ours)) {
+            take(name, ours, theirs);
+            return true;
+        }
+        return false;
+    }
+
+    /** Write the merge of the blobs OURS and THEIRS, changed
+     *  differently from BASE, to OUT.  Return true iff it has conflicts,
+     *  as it does if any of the three is null. */
+    private static boolean merge(String base, String ours, String theirs,
+                                 StringWriter out) {
+        try {
+            if (base != null && ours != null && theirs != null) {
+                return LineMerge.merge(text(base), text(ours), text(theirs),
+                                       out);
+            }
+            LineMerge.conflict(text(ours), text(theirs), out);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the renames from tree BEFORE to tree AFTER, as a map
+     *  from new name to old (see Renames). */
+    private static TreeMap<String, String> renames(
+        HashMap<String, String> before, HashMap<String, String> after) {
+        HashMap<String, String> deleted = new HashMap<>();
+        HashMap<String, String> added = new HashMap<>();
+        TreeDiff.diff(before, after, (name, ids) -> {
+            if (ids[1] == null) {
+                deleted.put(name, ids[0]);
+            } else if (ids[0] == null) {
+                added.put(name, ids[1]);
+            }
+        });
+        return Renames.detect(deleted, added);
+    }
+
+    /** Move the entry for FROM in TREE to TO. */
+    private static void move(HashMap<String, String> tree, String from,
+                             String to) {
+        tree.put(to, tree.remove(from));
+    }
+
+    /** Record that file NAME, with blob OURS in the current head, is to
+     *  have blob ID, or be deleted if ID is null. */
+    private void take(String name, String ours, String id) {
+        if (id == null) {
+            _remove.put(name, ours);
+        } else {
+            _update.put(name, id);
+        }
+    }
+
+    /** Return the ID of a blob of CONTENTS, keeping it if it is new. */
+    private String store(String contents) {
+        Blob blob = new Blob(contents);
+        _blobs.putIfAbsent(blob.getUID(), blob);
+        return blob.getUID();
+    }
+
+    /** Return the contents of committed blob ID, or "" if it is null. */
+    private static String text(String id) {
+        if (id == null) {
+            return "";
+        }
+        return ((Blob) Main.read(Main.getBlobPath(), id)).getContents();
+    }
+
+    /** Return true iff blob IDs A and B, either of which may be null,
+     *  are the same. */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/** An inverted index over commit messages, so that find need not read
+ *  any commit.  Each commit indexed gets a position; the index keeps its
+ *  ID and message by position, and for each term of the messages the
+ *  positions of the commits using it.
+ *
+ *  The index is kept in a gitlet directory as messages.idx, written
+ *  whole, and messages.journal, to which each new commit's ID and
+ *  message are appended.  Once the journal holds JOURNAL_LIMIT commits
+ *  it is folded into messages.idx.  A repository without the index has
+ *  it built from its commits on first use.
+ *
+ *  The journal starts with MAGIC, and each record is the commit's ID
+ *  and message, each as its length and its bytes in UTF-8, appended in
+ *  one write.  A record cut short by a crash is cut off the journal;
+ *  an index or journal that cannot be read has the index built again.
+ *  messages.idx is replaced whole by renaming a new file over it.
+ *  Indexing never fails a command:  the commit is already written, and
+ *  an index that cannot be kept up is discarded, to be built again.
+ *  @author Yuan Sun
+ */
+class MessageIndex implements Serializable {
+
+    /** Kept fixed so that an index survives a rebuild. */
+    private static final long serialVersionUID = -4675600825741332748L;
+    /** Name of the index file. */
+    static final String INDEX = "messages.idx";
+    /** Name of the journal file. */
+    static final String JOURNAL = "messages.journal";
+    /** Commits the journal may hold before it is folded into the index. */
+    static final int JOURNAL_LIMIT = 256;
+    /** First four bytes of the journal. */
+    static final int MAGIC = 0x676d6a31;
+
+    /** Open indexes, by gitlet directory. */
+    private static final HashMap<String, MessageIndex> OPEN =
+        new HashMap<>();
+
+    /** Commit IDs, by position. */
+    private final ArrayList<String> _ids = new ArrayList<>();
+    /** Commit messages, by position. */
+    private final ArrayList<String> _messages = new ArrayList<>();
+    /** Positions of the commits whose messages have each term. */
+    private final HashMap<String, ArrayList<Integer>> _postings =
+        new HashMap<>();
+
+    /** The gitlet directory the index belongs to. */
+    private transient String _dir;
+    /** IDs of the commits indexed. */
+    private transient HashSet<String> _known;
+    /** Commits in the journal. */
+    private transient int _journaled;
+
+    /** Return the message index of gitlet directory DIR, whose commits
+     *  are in COMMITDIR, building it if there is none. */
+    static MessageIndex open(String dir, String commitDir) {
+        MessageIndex index = OPEN.get(dir);
+        if (index != null) {
+            return index;
+        }
+        boolean fresh = !Utils.join(dir, INDEX).isFile();
+        if (!fresh) {
+            Object read = Main.readQuietly(dir, INDEX);
+            index = read instanceof MessageIndex ? (MessageIndex) read : null;
+        }
+        if (index != null) {
+            index._dir = dir;
+            index._known = new HashSet<>(index._ids);
+            fresh = !index.replay();
+        }
+        if (index == null || fresh) {
+            index = new MessageIndex();
+            index._dir = dir;
+            index._known = new HashSet<>();
+            Utils.join(dir, JOURNAL).delete();
+            for (String id : ObjectStore.ids(commitDir)) {
+                index.put(id, ((Commit) Main.read(commitDir, id)).getMsg());
+            }
+            index.save();
+        }
+        OPEN.put(dir, index);
+        return index;
+    }
+
+    /** Return the message index of this repository. */
+    static MessageIndex open() {
+        return open(Main.getGitPath(), Main.getCommitPath());
+    }
+
+    /** Index COMMIT, just written to COMMITDIR, in the index of gitlet
+     *  directory DIR.  A repository with no index yet is left alone; its
+     *  index will be built from the commits themselves, as it is if the
+     *  index cannot be kept. */
+    static void record(String dir, String commitDir, Commit commit) {
+        if (OPEN.containsKey(dir) || Utils.join(dir, INDEX).isFile()) {
+            try {
+                open(dir, commitDir).add(commit);
+            } catch (RuntimeException excp) {
+                discard(dir);
+            }
+        }
+    }
+
+    /** Discard the message index of gitlet directory DIR, to be built
+     *  again when next used. */
+    static void discard(String dir) {
+        OPEN.remove(dir);
+        Utils.join(dir, INDEX).delete();
+        Utils.join(dir, JOURNAL).delete();
+    }
+
+    /** Index COMMIT, recording it on disk, unless it is indexed. */
+    void add(Commit commit) {
+        if (_known.contains(commit.getUID())) {
+            return;
+        }
+        put(commit.getUID(), commit.getMsg());
+        if (_journaled + 1 >= JOURNAL_LIMIT) {
+            save();
+            Utils.join(_dir, JOURNAL).delete();
+            _journaled = 0;
+            return;
+        }
+        File journal = Utils.join(_dir, JOURNAL);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (journal.length() == 0) {
+                out.writeInt(MAGIC);
+            }
+            for (String s : new String[] {commit.getUID(), commit.getMsg()}) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(bytes.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _journaled += 1;
+    }
+
+    /** Write messages.idx anew, through a file renamed over it, so that
+     *  a crash leaves the old index or the new one. */
+    private void save() {
+        String tmp = INDEX + ".tmp";
+        Main.write(_dir, tmp, this);
+        try {
+            Files.move(Utils.join(_dir, tmp).toPath(),
+                       Utils.join(_dir, INDEX).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the IDs of the commits whose message is MSG. */
+    List<String> exact(String msg) {
+        List<String> result = new ArrayList<>();
+        for (int pos : candidates(terms(msg))) {
+            if (_messages.get(pos).equals(msg)) {
+                result.add(_ids.get(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Return the IDs of the commits whose message has every term of
+     *  QUERY, ignoring case. */
+    List<String> token(String query) {
+        List<String> result = new ArrayList<>();
+        Set<String> terms = terms(query);
+        if (!terms.isEmpty()) {
+            for (int pos : candidates(terms)) {
+                result.add(_ids.get(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Return the IDs of the commits whose message contains TEXT. */
+    List<String> substring(String text) {
+        List<String> result = new ArrayList<>();
+        for (int pos = 0; pos < _messages.size(); pos += 1) {
+            if (_messages.get(pos).contains(text)) {
+                result.add(_ids.get(pos));
+            }
+        }
+        return result;
+    }
+
+    /** Return the terms of MSG:  its runs of letters, digits, '-' and
+     *  '_' in lower case, and also the parts of each run between '-'
+     *  and '_', so that a ticket ID such as ABC-123 is found by
+     *  abc-123, abc or 123. */
+    static Set<String> terms(String msg) {
+        Set<String> result = new LinkedHashSet<>();
+        String lower = msg.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i += 1) {
+            boolean word = i < lower.length()
+                && (Character.isLetterOrDigit(lower.charAt(i))
+                    || lower.charAt(i) == '-' || lower.charAt(i) == '_');
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                String run = lower.substring(start, i);
+                for (String part : run.split("[-_]")) {
+                    if (!part.isEmpty()) {
+                        result.add(run);
+                        result.add(part);
+                    }
+                }
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the positions of the commits having all of TERMS, in
+     *  order, or of all commits if TERMS is empty. */
+    private List<Integer> candidates(Set<String> terms) {
+        List<Integer> result = null;
+        for (String term : terms) {
+            List<Integer> postings = _postings.get(term);
+            if (postings == null) {
+                return new ArrayList<>();
+            }
+            if (result == null || postings.size() < result.size()) {
+                result = postings;
+            }
+        }
+        if (result == null) {
+            result = new ArrayList<>();
+            for (int pos = 0; pos < _ids.size(); pos += 1) {
+                result.add(pos);
+            }
+            return result;
+        }
+        List<Integer> found = new ArrayList<>();
+        for (int pos : result) {
+            if (terms(_messages.get(pos)).containsAll(terms)) {
+                found.add(pos);
+            }
+        }
+        return found;
+    }
+
+    /** Add the commit ID with message MSG at the next position. */
+    private void put(String id, String msg) {
+        int pos = _ids.size();
+        _ids.add(id);
+        _messages.add(msg);
+        _known.add(id);
+        for (String term : terms(msg)) {
+            _postings.computeIfAbsent(term, t -> new ArrayList<>()).add(pos);
+        }
+    }
+
+    /** Add the commits in the journal, cutting off a record cut short.
+     *  Return false if the journal is not one this index can read. */
+    private boolean replay() {
+        File journal = Utils.join(_dir, JOURNAL);
+        if (!journal.isFile() || journal.length() == 0) {
+            return true;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(journal));
+        if (buf.remaining() < 4 || buf.getInt() != MAGIC) {
+            return false;
+        }
+        int end = buf.position();
+        while (true) {
+            String id = string(buf);
+            String msg = string(buf);
+            if (id == null || msg == null) {
+                break;
+            }
+            if (!_known.contains(id)) {
+                put(id, msg);
+            }
+            _journaled += 1;
+            end = buf.position();
+        }
+        if (end < buf.limit()) {
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                file.setLength(end);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /** Return the string read from BUF as its length and its bytes in
+     *  UTF-8, or null if BUF ends before it does. */
+    private static String string(ByteBuffer buf) {
+        if (buf.remaining() < 4) {
+            return null;
+        }
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        buf.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Stack;
+import java.util.TreeSet;
+
+/** One-off rewrites of repositories made by older versions of gitlet.
+ *  @author Yuan Sun
+ */
+class Migration {
+
+    /** Rewrite the repo so blob UIDs cover contents only.
+     *  Blobs that differed only by file name collapse into one, every
+     *  commit is rewritten to refer to the new UIDs (which changes its
+     *  own UID and those of its descendants) and the branches are moved
+     *  to the rewritten commits.  Prints the number of objects rewritten
+     *  and the bytes reclaimed.  Nothing is deleted until every new
+     *  object is written and the branches are saved pointing at them, so
+     *  a run cut short leaves the old history whole and can be run
+     *  again. */
+    static void blobIdentity() {
+        Staging stage = Main.getStaging();
+        if (!stage.getAddStage().isEmpty()
+            || !stage.getRemoveStage().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            System.exit(0);
+        }
+        String blobDir = Main.getBlobPath();
+        String commitDir = Main.getCommitPath();
+        long before = size(new File(blobDir)) + size(new File(commitDir));
+        boolean packed = !Pack.packs(blobDir).isEmpty();
+
+        TreeSet<String> oldBlobs = new TreeSet<>();
+        for (String id : ObjectStore.ids(blobDir)) {
+            oldBlobs.add(id);
+        }
+        HashMap<String, String> blobIds = new HashMap<>();
+        HashSet<String> newBlobs = new HashSet<>();
+        for (String id : oldBlobs) {
+            Blob blob = (Blob) Main.read(blobDir, id);
+            String newID = blob.rehash();
+            blobIds.put(id, newID);
+            if (newBlobs.add(newID)) {
+                Main.write(blobDir, newID, blob);
+            }
+        }
+
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.looseIds(commitDir)) {
+            commits.put(id, (Commit) Main.read(commitDir, id));
+        }
+        HashMap<String, String> commitIds = new HashMap<>();
+        for (String id : parentsFirst(commits)) {
+            Commit commit = commits.get(id);
+            String newID = commit.remap(blobIds, commitIds);
+            commitIds.put(id, newID);
+            if (!newID.equals(id)) {
+                Main.write(commitDir, newID, commit);
+            }
+        }
+        MessageIndex.discard(Main.getGitPath());
+        TimeIndex.discard(Main.getGitPath());
+        CommitGraph.discard(Main.getGitPath());
+        Blame.discard(Main.getGitPath());
+        MergeBases.discard(Main.getGitPath());
+        CommitsTree tree = Main.getAllCommits();
+        tree.remapBranches(commitIds);
+        stage.setBlobs(tree.getCurrentCommit());
+        Main.saveState();
+
+        HashSet<String> newCommits = new HashSet<>(commitIds.values());
+        for (String id : commits.keySet()) {
+            if (!newCommits.contains(id)) {
+                ObjectStore.file(commitDir, id).delete();
+            }
+        }
+        for (String id : oldBlobs) {
+            if (!newBlobs.contains(id)) {
+                ObjectStore.file(blobDir, id).delete();
+            }
+        }
+        if (packed) {
+            File packDir = Utils.join(blobDir, Pack.DIR);
+            for (String name : Utils.plainFilenamesIn(packDir)) {
+                Utils.join(packDir, name).delete();
+            }
+            Pack.reload(blobDir);
+            Main.repack();
+        }
+
+        long after = size(new File(blobDir)) + size(new File(commitDir));
+        System.out.println("Rewrote " + oldBlobs.size() + " blobs as "
+                           + newBlobs.size() + " and " + commits.size()
+                           + " commits; reclaimed "
+                           + Math.max(0, before - after) + " bytes.");
+    }
+
+    /** Return the IDs of COMMITS ordered so that every commit comes
+     *  after its parents. */
+    static List<String> parentsFirst(HashMap<String, Commit> commits) {
+        List<String> result = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        for (String start : new TreeSet<>(commits.keySet())) {
+            Stack<String> todo = new Stack<>();
+            todo.push(start);
+            while (!todo.isEmpty()) {
+                String id = todo.peek();
+                if (done.contains(id)) {
+                    todo.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                boolean ready = true;
+                for (String parent : new String[] {commit.getParent(),
+                        commit.getSecondParent()}) {
+                    if (commits.containsKey(parent)
+                        && !done.contains(parent)) {
+                        todo.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    todo.pop();
+                    done.add(id);
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the total size in bytes of the files under F. */
+    static long size(File f) {
+        if (f.isFile()) {
+            return f.length();
+        }
+        long total = 0;
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                total += size(child);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** A Bloom filter over the IDs of the objects in an object directory,
+ *  kept memory-mapped in DIR/objects.bloom.  A negative answer is
+ *  certain, so lookups of absent objects never touch the store; a
+ *  positive one may be wrong and is checked against the store.
+ *
+ *  The filter is built from the directory's objects the first time it
+ *  is asked about one, extended as objects are written and rebuilt,
+ *  twice as large, when it fills up.  The file holds
+ *      int    MAGIC
+ *      int    number of hash functions
+ *      long   number of bits
+ *      long   number of IDs added
+ *      bytes  the bits
+ *  @author Yuan Sun
+ */
+class ObjectFilter {
+
+    /** Name of the filter file in an object directory. */
+    static final String FILE = "objects.bloom";
+    /** Bits of filter per object it is sized for; with HASHES hash
+     *  functions, about 1% of absent objects test positive. */
+    static final int BITS_PER_ID = 10;
+    /** Number of hash functions. */
+    static final int HASHES = 7;
+    /** Fewest objects a filter is sized for. */
+    static final int MIN_CAPACITY = 1 << 12;
+    /** First int of a filter file. */
+    private static final int MAGIC = 0x47424c4d;
+    /** Bytes of the file header. */
+    private static final int HEADER = 24;
+    /** Position in the header of the number of IDs added. */
+    private static final int COUNT = 16;
+
+    /** Open filters, by object directory. */
+    private static final HashMap<String, ObjectFilter> OPEN =
+        new HashMap<>();
+    /** Object directories known to have no filter file yet. */
+    private static final HashSet<String> ABSENT = new HashSet<>();
+
+    /** The mapped filter file. */
+    private final MappedByteBuffer _map;
+    /** Number of bits in the filter. */
+    private final long _bits;
+    /** Number of hash functions. */
+    private final int _hashes;
+
+    /** The filter whose file is mapped at MAP. */
+    private ObjectFilter(MappedByteBuffer map) {
+        _map = map;
+        _hashes = map.getInt(4);
+        _bits = map.getLong(8);
+    }
+
+    /** Return false if object directory DIR certainly does not hold ID,
+     *  building DIR's filter if it has none. */
+    static boolean mightContain(String dir, String id) {
+        if (!ObjectStore.isObjectID(id)) {
+            return true;
+        }
+        ObjectFilter filter = OPEN.get(dir);
+        if (filter == null) {
+            filter = open(dir);
+            if (filter == null) {
+                filter = build(dir, null);
+            }
+            if (filter == null) {
+                return true;
+            }
+        }
+        return filter.test(id);
+    }
+
+    /** Record that object ID is being written to DIR.  A directory that
+     *  has no filter yet is left alone; its filter will be built from
+     *  the objects themselves. */
+    static void add(String dir, String id) {
+        ObjectFilter filter = OPEN.get(dir);
+        if (filter == null && !ABSENT.contains(dir)) {
+            filter = open(dir);
+            if (filter == null) {
+                ABSENT.add(dir);
+            }
+        }
+        if (filter == null || !ObjectStore.isObjectID(id)) {
+            return;
+        }
+        filter.put(id);
+        if (filter.count() > filter._bits / BITS_PER_ID) {
+            build(dir, id);
+        }
+    }
+
+    /** Rebuild the filter of DIR from the objects it now holds,
+     *  dropping IDs of objects no longer there. */
+    static void rebuild(String dir) {
+        if (OPEN.containsKey(dir) || Utils.join(dir, FILE).isFile()) {
+            build(dir, null);
+        }
+    }
+
+    /** Return the filter of DIR mapped from its file, or null if it has
+     *  none or it is unreadable. */
+    private static ObjectFilter open(String dir) {
+        File f = Utils.join(dir, FILE);
+        if (!f.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            if (file.length() < HEADER) {
+                return null;
+            }
+            MappedByteBuffer map = file.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, file.length());
+            if (map.getInt(0) != MAGIC
+                || map.getLong(8) != (file.length() - HEADER) * 8) {
+                return null;
+            }
+            ObjectFilter filter = new ObjectFilter(map);
+            OPEN.put(dir, filter);
+            ABSENT.remove(dir);
+            return filter;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Write a new filter for the objects in DIR, plus EXTRA if it is
+     *  not null, and return it opened; or null if DIR does not exist. */
+    private static ObjectFilter build(String dir, String extra) {
+        if (!new File(dir).isDirectory()) {
+            return null;
+        }
+        List<String> ids = new ArrayList<>();
+        for (String id : ObjectStore.ids(dir)) {
+            ids.add(id);
+        }
+        if (extra != null) {
+            ids.add(extra);
+        }
+        long capacity = Math.max(MIN_CAPACITY, 2L * ids.size());
+        long bits = (capacity * BITS_PER_ID + 63) / 64 * 64;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + (int) (bits / 8));
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, HASHES);
+        buf.putLong(8, bits);
+        long count = 0;
+        for (String id : ids) {
+            if (set(buf, bits, HASHES, id)) {
+                count += 1;
+            }
+        }
+        buf.putLong(COUNT, count);
+        try {
+            File tmp = File.createTempFile("bloom", ".tmp", new File(dir));
+            Utils.writeContents(tmp, buf.array());
+            Files.move(tmp.toPath(), Utils.join(dir, FILE).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            return null;
+        }
+        OPEN.remove(dir);
+        return open(dir);
+    }
+
+    /** Return true iff ID may have been added. */
+    private boolean test(String id) {
+        long h1 = hash1(id), h2 = hash2(id);
+        for (int i = 0; i < _hashes; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _bits);
+            int b = HEADER + (int) (bit >>> 3);
+            if ((_map.get(b) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Add ID, counting it if it set any new bit. */
+    private void put(String id) {
+        if (set(_map, _bits, _hashes, id)) {
+            _map.putLong(COUNT, count() + 1);
+        }
+    }
+
+    /** Return the number of IDs added. */
+    private long count() {
+        return _map.getLong(COUNT);
+    }
+
+    /** Set the bits of ID in the filter BUF of BITS bits and HASHES hash
+     *  functions.  Return true iff any was not already set. */
+    private static boolean set(ByteBuffer buf, long bits, int hashes,
+                               String id) {
+        long h1 = hash1(id), h2 = hash2(id);
+        boolean changed = false;
+        for (int i = 0; i < hashes; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            int b = HEADER + (int) (bit >>> 3);
+            byte old = buf.get(b);
+            byte now = (byte) (old | (1 << (bit & 7)));
+            if (now != old) {
+                buf.put(b, now);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Return the first hash of ID.  IDs are SHA-1 hashes already, so
+     *  their digits serve; the i-th bit is hash1 + i * hash2. */
+    private static long hash1(String id) {
+        return Long.parseUnsignedLong(id.substring(0, 16), 16);
+    }
+
+    /** Return the second hash of ID, which is odd. */
+    private static long hash2(String id) {
+        return Long.parseUnsignedLong(id.substring(16, 32), 16) | 1;
+    }
+}
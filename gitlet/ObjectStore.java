@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** Layout of the loose objects in an object directory such as .blobs,
+ *  .commits or .chunks.  Object ID abcdef... lives in DIR/ab/cdef...,
+ *  so no directory holds more than a 256th of the objects.  Files
+ *  written before sharding, directly in DIR, are still found.
+ *  @author Yuan Sun
+ */
+class ObjectStore {
+
+    /** Number of leading ID characters naming an object's shard. */
+    static final int SHARD_LENGTH = 2;
+
+    /** Return true iff NAME is a full object ID. */
+    static boolean isObjectID(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (Character.digit(name.charAt(i), 16) < 0
+                || Character.isUpperCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff NAME names a shard directory. */
+    private static boolean isShard(String name) {
+        return name.length() == SHARD_LENGTH
+            && Character.digit(name.charAt(0), 16) >= 0
+            && Character.digit(name.charAt(1), 16) >= 0;
+    }
+
+    /** Return the file holding loose object ID in DIR:  the old
+     *  unsharded file if there is one, and otherwise its place in the
+     *  shard, which may not exist yet. */
+    static File file(String dir, String id) {
+        File flat = Utils.join(dir, id);
+        if (flat.isFile()) {
+            return flat;
+        }
+        return Utils.join(dir, id.substring(0, SHARD_LENGTH),
+                          id.substring(SHARD_LENGTH));
+    }
+
+    /** Return the file to write loose object ID of DIR to, creating
+     *  its shard directory if need be, and enter ID in DIR's filter. */
+    static File fileForWrite(String dir, String id) {
+        ObjectFilter.add(dir, id);
+        File f = file(dir, id);
+        f.getParentFile().mkdirs();
+        return f;
+    }
+
+    /** Return true iff DIR holds object ID, loose or packed.  IDs that
+     *  DIR's filter rules out are not looked for at all. */
+    static boolean contains(String dir, String id) {
+        if (!ObjectFilter.mightContain(dir, id)) {
+            return false;
+        }
+        return file(dir, id).isFile() || Pack.contains(dir, id);
+    }
+
+    /** Move loose object ID from directory FROM into directory TO.
+     *  Staged objects are already in their final form, so this is a
+     *  rename within .gitlet and never rereads or rewrites the data;
+     *  readers of TO see either no object or the complete one.  If TO
+     *  already has the object, the staged copy is just deleted. */
+    static void promote(String from, String to, String id) {
+        File source = file(from, id);
+        if (contains(to, id)) {
+            source.delete();
+        } else {
+            move(source, fileForWrite(to, id));
+        }
+        if (!source.getParentFile().equals(new File(from))) {
+            source.getParentFile().delete();
+        }
+    }
+
+    /** Rename SOURCE to DEST atomically. */
+    private static void move(File source, File dest) {
+        Path target = dest.toPath();
+        try {
+            try {
+                Files.move(source.toPath(), target,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Path tmp = target.resolveSibling(dest.getName() + ".tmp");
+                Files.copy(source.toPath(), tmp,
+                           StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(source.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the IDs of the loose objects in DIR, shard by shard.
+     *  Each shard is listed only when the iteration reaches it. */
+    static Iterable<String> looseIds(final String dir) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new LooseIterator(dir, "");
+            }
+        };
+    }
+
+    /** Return the IDs of the loose objects in DIR starting with PREFIX.
+     *  A prefix of at least SHARD_LENGTH characters lists one shard. */
+    static Iterable<String> idsWithPrefix(final String dir,
+                                          final String prefix) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new LooseIterator(dir, prefix);
+            }
+        };
+    }
+
+    /** Return the IDs of all objects in DIR: the loose ones, lazily, then
+     *  the packed ones. */
+    static Iterable<String> ids(final String dir) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> loose = new LooseIterator(dir, "");
+                return new Iterator<String>() {
+                    /** Packed IDs, once the loose ones are used up. */
+                    private Iterator<String> _packed;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (loose.hasNext()) {
+                            return true;
+                        }
+                        if (_packed == null) {
+                            _packed = Pack.ids(dir).iterator();
+                        }
+                        return _packed.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return loose.hasNext() ? loose.next()
+                            : _packed.next();
+                    }
+                };
+            }
+        };
+    }
+
+    /** Iterates over the loose IDs of a directory, old unsharded files
+     *  first and then each shard in order. */
+    private static class LooseIterator implements Iterator<String> {
+        /** The object directory. */
+        private final String _dir;
+        /** Only IDs starting with this are returned. */
+        private final String _prefix;
+        /** Shards left to list. */
+        private final List<String> _shards = new ArrayList<>();
+        /** Position in _shards of the next shard to list. */
+        private int _nextShard;
+        /** Shard whose names are in _names, or "" for unsharded files. */
+        private String _shard = "";
+        /** Names in the shard being returned. */
+        private String[] _names = new String[0];
+        /** Position in _names of the next candidate. */
+        private int _pos;
+        /** Next ID to return, or null if not found yet. */
+        private String _next;
+
+        /** An iterator over the IDs in DIR starting with PREFIX. */
+        LooseIterator(String dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+            String[] top = new File(dir).list();
+            if (top == null) {
+                return;
+            }
+            Arrays.sort(top);
+            List<String> flat = new ArrayList<>();
+            for (String name : top) {
+                if (isShard(name)) {
+                    if (prefixMatches(name)) {
+                        _shards.add(name);
+                    }
+                } else if (isObjectID(name)
+                           && new File(dir, name).isFile()) {
+                    flat.add(name);
+                }
+            }
+            _names = flat.toArray(new String[0]);
+        }
+
+        /** Return true iff some ID in SHARD could start with _prefix. */
+        private boolean prefixMatches(String shard) {
+            int n = Math.min(SHARD_LENGTH, _prefix.length());
+            return shard.startsWith(_prefix.substring(0, n));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (_next == null) {
+                if (_pos < _names.length) {
+                    String id = _shard + _names[_pos++];
+                    if (id.startsWith(_prefix) && isObjectID(id)) {
+                        _next = id;
+                    }
+                } else if (_nextShard < _shards.size()) {
+                    _shard = _shards.get(_nextShard++);
+                    String[] names = new File(_dir, _shard).list();
+                    _names = names == null ? new String[0] : names;
+                    Arrays.sort(_names);
+                    _pos = 0;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = _next;
+            _next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A pack of objects from one object directory, stored in
+ *  DIR/.pack/pack-ID.pack with a sorted index in pack-ID.idx.
+ *
+ *  Packed objects are kept in their serialized form.  Each entry is
+ *  either the whole object or a Delta against an earlier entry, and
+ *  its payload is compressed with the configured codec:
+ *      byte   FULL or DELTA
+ *      long   offset of the base entry (DELTA only)
+ *      int    payload length
+ *      bytes  payload
+ *  The index holds the entry count, then each object's 20-byte ID and
+ *  entry offset, in ID order.
+ *  @author Yuan Sun
+ */
+class Pack {
+
+    /** Subdirectory of an object directory holding its packs. */
+    static final String DIR = ".pack";
+    /** Entry type of a whole object. */
+    private static final int FULL = 0;
+    /** Entry type of a delta against another entry. */
+    private static final int DELTA = 1;
+    /** First int of every pack and index file. */
+    private static final int MAGIC = 0x4750414b;
+    /** Number of preceding objects tried as delta bases. */
+    static final int WINDOW = 10;
+    /** Longest chain of deltas allowed before storing an object whole. */
+    static final int MAX_DEPTH = 50;
+    /** Bytes of reconstructed objects kept for use as delta bases. */
+    static final int CACHE_BYTES = 1 << 24;
+    /** Bytes of a binary object ID. */
+    private static final int ID_BYTES = 20;
+
+    /** Loaded packs, by the object directory they belong to. */
+    private static final HashMap<String, List<Pack>> LOADED = new HashMap<>();
+    /** Recently reconstructed entries, by pack name and offset. */
+    private static final LinkedHashMap<String, byte[]> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total bytes held in CACHE. */
+    private static long _cached;
+
+    /** The pack file. */
+    private final File _file;
+    /** IDs of the objects in this pack, sorted. */
+    private final String[] _ids;
+    /** Entry offset of each of _ids. */
+    private final long[] _offsets;
+
+    /** The pack in FILE, whose index lists IDS at OFFSETS. */
+    private Pack(File file, String[] ids, long[] offsets) {
+        _file = file;
+        _ids = ids;
+        _offsets = offsets;
+    }
+
+    /** Return the packs of object directory DIR, loading their indexes
+     *  on first use.  Objects may be read on several threads at once. */
+    static synchronized List<Pack> packs(String dir) {
+        List<Pack> result = LOADED.get(dir);
+        if (result == null) {
+            result = new ArrayList<>();
+            File packDir = Utils.join(dir, DIR);
+            List<String> names = Utils.plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        result.add(load(packDir, name));
+                    }
+                }
+            }
+            LOADED.put(dir, result);
+        }
+        return result;
+    }
+
+    /** Return the pack in PACKDIR indexed by the file IDXNAME. */
+    private static Pack load(File packDir, String idxName) {
+        String base = idxName.substring(0, idxName.length() - 4);
+        File idx = Utils.join(packDir, idxName);
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(idx)))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Bad pack index %s", idxName);
+            }
+            int n = in.readInt();
+            String[] ids = new String[n];
+            long[] offsets = new long[n];
+            byte[] raw = new byte[ID_BYTES];
+            for (int i = 0; i < n; i += 1) {
+                in.readFully(raw);
+                ids[i] = toHex(raw);
+                offsets[i] = in.readLong();
+            }
+            File pack = Utils.join(packDir, base + ".pack");
+            return new Pack(pack, ids, offsets);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff a pack of object directory DIR holds ID. */
+    static boolean contains(String dir, String id) {
+        for (Pack pack : packs(dir)) {
+            if (Arrays.binarySearch(pack._ids, id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the serialized object ID from the packs of object
+     *  directory DIR, or null if none of them has it. */
+    static byte[] find(String dir, String id) {
+        for (Pack pack : packs(dir)) {
+            int k = Arrays.binarySearch(pack._ids, id);
+            if (k >= 0) {
+                return pack.entry(pack._offsets[k]);
+            }
+        }
+        return null;
+    }
+
+    /** Return the IDs of all packed objects of object directory DIR. */
+    static List<String> ids(String dir) {
+        List<String> result = new ArrayList<>();
+        for (Pack pack : packs(dir)) {
+            result.addAll(Arrays.asList(pack._ids));
+        }
+        return result;
+    }
+
+    /** Forget the packs loaded for object directory DIR. */
+    static void reload(String dir) {
+        synchronized (Pack.class) {
+            LOADED.remove(dir);
+        }
+        synchronized (CACHE) {
+            CACHE.clear();
+            _cached = 0;
+        }
+    }
+
+    /** Return the object in the entry at OFFSET, resolving deltas
+     *  through the cache. */
+    private byte[] entry(long offset) {
+        String key = _file.getName() + ":" + offset;
+        byte[] result;
+        synchronized (CACHE) {
+            result = CACHE.get(key);
+        }
+        if (result != null) {
+            return result;
+        }
+        int type;
+        long baseOffset = -1;
+        byte[] payload;
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            in.seek(offset);
+            type = in.readByte();
+            if (type == DELTA) {
+                baseOffset = in.readLong();
+            }
+            payload = new byte[in.readInt()];
+            in.readFully(payload);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        payload = Compression.decompress(payload);
+        if (type == DELTA) {
+            result = Delta.apply(entry(baseOffset), payload);
+        } else {
+            result = payload;
+        }
+        synchronized (CACHE) {
+            byte[] old = CACHE.put(key, result);
+            _cached += result.length - (old == null ? 0 : old.length);
+            while (_cached > CACHE_BYTES && CACHE.size() > 1) {
+                Map.Entry<String, byte[]> eldest =
+                    CACHE.entrySet().iterator().next();
+                _cached -= eldest.getValue().length;
+                CACHE.remove(eldest.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** An object being packed. */
+    private static class Item {
+        /** Object ID. */
+        private String _id;
+        /** Path the object was last committed under, or "". */
+        private String _path;
+        /** Serialized object. */
+        private byte[] _data;
+        /** Index in the packing order of the delta base, or -1. */
+        private int _base = -1;
+        /** Delta against the base, if any. */
+        private byte[] _delta;
+        /** Number of deltas between this object and a whole one. */
+        private int _depth;
+    }
+
+    /** Return the file name of PATH without its directories. */
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /** Pack every object of object directory DIR, loose or already
+     *  packed, into one new pack, and remove what it replaces.
+     *  PATHS maps object IDs to the paths they were committed under;
+     *  objects are ordered by name and then by decreasing size, so
+     *  that successive versions of a file sit within WINDOW of each
+     *  other, and each one is stored as a delta against the candidate
+     *  in the window that gives the smallest result.  Returns the
+     *  number of objects packed and the number stored as deltas. */
+    static int[] repack(String dir, Map<String, String> paths) {
+        TreeMap<String, Item> all = new TreeMap<>();
+        List<String> loose = new ArrayList<>();
+        for (String id : ObjectStore.looseIds(dir)) {
+            loose.add(id);
+            Item item = new Item();
+            item._id = id;
+            item._data = Compression.decompress(
+                Utils.readContents(ObjectStore.file(dir, id)));
+            all.put(id, item);
+        }
+        for (String id : ids(dir)) {
+            if (!all.containsKey(id)) {
+                Item item = new Item();
+                item._id = id;
+                item._data = find(dir, id);
+                all.put(id, item);
+            }
+        }
+        List<Item> order = new ArrayList<>(all.values());
+        for (Item item : order) {
+            String path = paths.get(item._id);
+            item._path = path == null ? "" : path;
+        }
+        Collections.sort(order, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                int c = baseName(a._path).compareTo(baseName(b._path));
+                if (c == 0) {
+                    c = a._path.compareTo(b._path);
+                }
+                if (c == 0) {
+                    c = Integer.compare(b._data.length, a._data.length);
+                }
+                return c;
+            }
+        });
+        int deltas = 0;
+        for (int i = 0; i < order.size(); i += 1) {
+            Item item = order.get(i);
+            int best = item._data.length / 2;
+            for (int j = Math.max(0, i - WINDOW); j < i; j += 1) {
+                Item cand = order.get(j);
+                if (cand._depth >= MAX_DEPTH
+                    || cand._data.length / 2 > item._data.length
+                    || item._data.length / 2 > cand._data.length) {
+                    continue;
+                }
+                byte[] delta = Delta.create(cand._data, item._data);
+                if (delta.length < best) {
+                    best = delta.length;
+                    item._delta = delta;
+                    item._base = j;
+                    item._depth = cand._depth + 1;
+                }
+            }
+            if (item._delta != null) {
+                deltas += 1;
+            }
+        }
+        write(dir, order);
+        for (String id : loose) {
+            ObjectStore.file(dir, id).delete();
+        }
+        ObjectFilter.rebuild(dir);
+        return new int[] {order.size(), deltas};
+    }
+
+    /** Write the objects ORDER as the only pack of object directory
+     *  DIR, replacing any packs it had. */
+    private static void write(String dir, List<Item> order) {
+        File packDir = Utils.join(dir, DIR);
+        packDir.mkdirs();
+        List<String> old = Utils.plainFilenamesIn(packDir);
+        List<String> sortedIds = new ArrayList<>();
+        for (Item item : order) {
+            sortedIds.add(item._id);
+        }
+        Collections.sort(sortedIds);
+        String name = "pack-" + Utils.sha1(String.join("", sortedIds));
+        File packFile = Utils.join(packDir, name + ".pack");
+        File tmp = Utils.join(packDir, name + ".tmp");
+        HashMap<String, Long> offsets = new HashMap<>();
+        long[] entryOffsets = new long[order.size()];
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            for (int i = 0; i < order.size(); i += 1) {
+                Item item = order.get(i);
+                entryOffsets[i] = out.size();
+                offsets.put(item._id, (long) out.size());
+                byte[] payload;
+                if (item._delta != null) {
+                    out.writeByte(DELTA);
+                    out.writeLong(entryOffsets[item._base]);
+                    payload = Compression.compress(item._delta);
+                } else {
+                    out.writeByte(FULL);
+                    payload = Compression.compress(item._data);
+                }
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!tmp.renameTo(packFile)) {
+            throw Utils.error("Could not write pack %s", name);
+        }
+        File idxTmp = Utils.join(packDir, name + ".idx.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(idxTmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sortedIds.size());
+            for (String id : sortedIds) {
+                out.write(fromHex(id));
+                out.writeLong(offsets.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!idxTmp.renameTo(Utils.join(packDir, name + ".idx"))) {
+            throw Utils.error("Could not write pack %s", name);
+        }
+        for (String file : old) {
+            if (!file.startsWith(name + ".")) {
+                Utils.join(packDir, file).delete();
+            }
+        }
+        reload(dir);
+    }
+
+    /** Return the lowercase hex form of BYTES. */
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Return the bytes of the hex string HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Rename detection.  Given the files deleted and the files added
+ *  between two trees, a deleted file and an added one are taken to be
+ *  the same file renamed if they have the same blob, or failing that
+ *  if enough of their lines are the same.
+ *
+ *  Comparing every deleted file with every added one would take time
+ *  quadratic in their number, so each file is summarized by a MinHash
+ *  sketch:  the least value, under each of SKETCH hash functions, of
+ *  the hashes of its distinct lines.  Two sketches agree in a fraction
+ *  of places that estimates the Jaccard similarity of the files' line
+ *  sets.  The sketch is cut into BANDS bands of ROWS values, and files
+ *  are put in a bucket for each band; only files sharing a bucket,
+ *  which is likely for files at least MIN_SCORE alike and unlikely for
+ *  files much less alike, are compared.
+ *  @author Yuan Sun
+ */
+class Renames {
+
+    /** Values in a sketch. */
+    static final int SKETCH = 64;
+    /** Values in a band of a sketch. */
+    static final int ROWS = 4;
+    /** Bands of a sketch. */
+    static final int BANDS = SKETCH / ROWS;
+    /** Least estimated similarity of a renamed file to its original. */
+    static final double MIN_SCORE = 0.5;
+
+    /** Seeds of the hash functions of a sketch. */
+    private static final long[] SEEDS = new long[SKETCH];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int k = 0; k < SKETCH; k += 1) {
+            seed = mix(seed + k);
+            SEEDS[k] = seed;
+        }
+    }
+
+    /** Return the renames from the files in DELETED to those in ADDED,
+     *  each a map from file name to blob ID, as a map from new name to
+     *  old.  Each file is in at most one rename.  Blobs are read from
+     *  the staging area or the blob store. */
+    static TreeMap<String, String> detect(Map<String, String> deleted,
+                                          Map<String, String> added) {
+        TreeMap<String, String> result = new TreeMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return result;
+        }
+        HashMap<String, List<String>> byId = new HashMap<>();
+        for (String name : new TreeMap<>(deleted).keySet()) {
+            byId.computeIfAbsent(deleted.get(name), id -> new ArrayList<>())
+                .add(name);
+        }
+        TreeMap<String, long[]> oldSketches = new TreeMap<>();
+        TreeMap<String, long[]> newSketches = new TreeMap<>();
+        HashSet<String> taken = new HashSet<>();
+        for (String name : new TreeMap<>(added).keySet()) {
+            List<String> same = byId.get(added.get(name));
+            if (same != null && !same.isEmpty()) {
+                String old = same.remove(0);
+                result.put(name, old);
+                taken.add(old);
+            }
+        }
+        for (Map.Entry<String, String> kv : deleted.entrySet()) {
+            if (!taken.contains(kv.getKey())) {
+                oldSketches.put(kv.getKey(),
+                                sketch(CommitsTree.contents(kv.getValue())));
+            }
+        }
+        for (Map.Entry<String, String> kv : added.entrySet()) {
+            if (!result.containsKey(kv.getKey())) {
+                newSketches.put(kv.getKey(),
+                                sketch(CommitsTree.contents(kv.getValue())));
+            }
+        }
+        result.putAll(pair(oldSketches, newSketches));
+        return result;
+    }
+
+    /** Return the renames from the files with sketches OLD to those with
+     *  sketches NEU, by name, as a map from new name to old.  Pairs
+     *  sharing a bucket and at least MIN_SCORE alike are taken best
+     *  first, each file in at most one. */
+    static TreeMap<String, String> pair(TreeMap<String, long[]> old,
+                                       TreeMap<String, long[]> neu) {
+        HashMap<Long, List<String>> buckets = new HashMap<>();
+        for (Map.Entry<String, long[]> kv : old.entrySet()) {
+            for (int band = 0; kv.getValue() != null && band < BANDS;
+                 band += 1) {
+                buckets.computeIfAbsent(bucket(kv.getValue(), band),
+                                        b -> new ArrayList<>())
+                    .add(kv.getKey());
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, long[]> kv : neu.entrySet()) {
+            if (kv.getValue() == null) {
+                continue;
+            }
+            HashSet<String> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band += 1) {
+                List<String> bucket =
+                    buckets.get(bucket(kv.getValue(), band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (String name : bucket) {
+                    if (seen.add(name)) {
+                        double score = similarity(old.get(name),
+                                                  kv.getValue());
+                        if (score >= MIN_SCORE) {
+                            candidates.add(new Candidate(name, kv.getKey(),
+                                                         score));
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates);
+        TreeMap<String, String> result = new TreeMap<>();
+        HashSet<String> taken = new HashSet<>();
+        for (Candidate c : candidates) {
+            if (!result.containsKey(c._new) && !taken.contains(c._old)) {
+                result.put(c._new, c._old);
+                taken.add(c._old);
+            }
+        }
+        return result;
+    }
+
+    /** Return the MinHash sketch of the distinct lines of TEXT, or null
+     *  if it has no lines. */
+    static long[] sketch(String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        long[] result = new long[SKETCH];
+        Arrays.fill(result, Long.MAX_VALUE);
+        HashSet<Long> lines = new HashSet<>();
+        for (int start = 0; start < text.length();) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(hash(text.substring(start, end)));
+            start = end;
+        }
+        for (long line : lines) {
+            for (int k = 0; k < SKETCH; k += 1) {
+                long h = mix(line ^ SEEDS[k]);
+                if (h < result[k]) {
+                    result[k] = h;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the fraction of places in which sketches A and B agree. */
+    static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int k = 0; k < SKETCH; k += 1) {
+            if (a[k] == b[k]) {
+                same += 1;
+            }
+        }
+        return (double) same / SKETCH;
+    }
+
+    /** Return the bucket of SKETCH for band BAND. */
+    private static long bucket(long[] sketch, int band) {
+        long h = band;
+        for (int k = band * ROWS; k < (band + 1) * ROWS; k += 1) {
+            h = mix(h * 31 + sketch[k]);
+        }
+        return h;
+    }
+
+    /** Return the 64-bit FNV-1a hash of the UTF-8 bytes of LINE. */
+    private static long hash(String line) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : line.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Return X with its bits mixed, as in SplitMix64. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** A possible rename and its score. */
+    private static final class Candidate implements Comparable<Candidate> {
+        /** Name deleted. */
+        private final String _old;
+        /** Name added. */
+        private final String _new;
+        /** Estimated similarity. */
+        private final double _score;
+
+        /** A rename from OLD to NEU with SCORE. */
+        Candidate(String old, String neu, double score) {
+            _old = old;
+            _new = neu;
+            _score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate c) {
+            int cmp = Double.compare(c._score, _score);
+            if (cmp == 0) {
+                cmp = _new.compareTo(c._new);
+            }
+            return cmp == 0 ? _old.compareTo(c._old) : cmp;
+        }
+    }
+}
@@ -1,39 +1,185 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /** staging class.
+ *  Every file the staging area knows about has one entry, whose flag
+ *  bits say which of its states the file is in.  The files tracked are
+ *  not kept here but read from the head commit.  The entries are saved
+ *  in .gitlet/index (see StagingIndex), and only the ones changed by a
+ *  command are written back.  Staging is Serializable only so that the
+ *  stagingConfig.bin files of older versions can be read.
  * @author Yuan Sun
  * */
 public class Staging implements Serializable {
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _trackedBlobs;
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _untracked;
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _modifyTracked;
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _removeTracked;
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _addStage;
-    /** HashMap<String, String>. */
-    private HashMap<String, String> _removeStage;
+    /** Kept fixed so that old stagingConfig.bin files stay readable. */
+    private static final long serialVersionUID = -3699915174112838228L;
+    /** File in the working directory where older versions kept the
+     *  serialized staging area. */
+    static final String LEGACY = "stagingConfig.bin";
+
+    /** Flag of a file staged for addition. */
+    static final int ADDED = 1;
+    /** Flag of a file staged for removal. */
+    static final int REMOVED = 2;
+    /** Flag of a tracked file changed in the working directory. */
+    static final int MODIFIED = 4;
+    /** Flag of a tracked file deleted from the working directory. */
+    static final int DELETED = 8;
+    /** Flag of a file that is not tracked. */
+    static final int UNTRACKED = 16;
+
+    /** The entries, by file name. */
+    private transient TreeMap<String, Entry> _entries;
+    /** Names of the entries changed since loading, with "" standing for
+     *  the head. */
+    private transient TreeSet<String> _changed;
+    /** ID of the commit whose files are tracked, or "". */
+    private transient String _head;
+    /** Files of _head, read when first needed. */
+    private transient HashMap<String, String> _tracked;
+    /** Where the entries are saved. */
+    private transient StagingIndex _index;
 
     /** constructor for staging. */
     public Staging() {
-        _trackedBlobs = new HashMap<>();
-        _untracked = new HashMap<>();
-        _modifyTracked = new HashMap<>();
-        _removeTracked = new HashMap<>();
-        _addStage = new HashMap<>();
-        _removeStage = new HashMap<>();
+        _entries = new TreeMap<>();
+        _changed = new TreeSet<>();
+        _head = "";
+        _index = new StagingIndex(Main.getGitPath());
+    }
+
+    /** A file's state in the staging area:  its flag bits and, if it is
+     *  staged for addition, the ID of the staged blob. */
+    static final class Entry {
+        /** Flag bits. */
+        final int _flags;
+        /** ID of the staged blob, or null. */
+        final String _id;
+
+        /** An entry with FLAGS and staged blob ID. */
+        private Entry(int flags, String id) {
+            _flags = flags;
+            _id = id;
+        }
+
+        /** Return an entry with FLAGS and staged blob ID. */
+        static Entry of(int flags, String id) {
+            return new Entry(flags, id);
+        }
+    }
+
+    /** Return the staging area saved in the .gitlet directory, or the
+     *  one an older version saved in stagingConfig.bin. */
+    static Staging load() {
+        StagingIndex index = new StagingIndex(Main.getGitPath());
+        if (!index.exists() && Utils.join(Main.getWorkingDir(),
+                                          LEGACY).isFile()) {
+            Staging stage = (Staging) Main.read(Main.getWorkingDir(),
+                                                LEGACY);
+            stage._index = index;
+            stage.setBlobs(Main.getAllCommits().getCurrentCommit());
+            return stage;
+        }
+        Staging stage = new Staging();
+        stage._index = index;
+        stage._head = index.read(stage._entries);
+        return stage;
+    }
+
+    /** Save the changes made since loading. */
+    void save() {
+        _index.write(_head, _entries, _changed);
+        _changed.clear();
+        Utils.join(Main.getWorkingDir(), LEGACY).delete();
+    }
+
+    /** Read a staging area serialized by an older version from IN,
+     *  keeping the state of each file and dropping its copy of the
+     *  tracked files. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _entries = new TreeMap<>();
+        _changed = new TreeSet<>();
+        _head = "";
+        String[] names = {"_untracked", "_modifyTracked", "_removeTracked",
+                          "_removeStage", "_addStage"};
+        int[] flags = {UNTRACKED, MODIFIED, DELETED, REMOVED, ADDED};
+        for (int i = 0; i < names.length; i += 1) {
+            HashMap<String, String> old =
+                (HashMap<String, String>) fields.get(names[i], null);
+            if (old != null) {
+                for (Map.Entry<String, String> kv : old.entrySet()) {
+                    setFlag(kv.getKey(), flags[i], kv.getValue());
+                }
+            }
+        }
+    }
+
+    /** Return true iff FILENAME has FLAG set. */
+    boolean has(String fileName, int flag) {
+        Entry entry = _entries.get(fileName);
+        return entry != null && (entry._flags & flag) != 0;
+    }
+
+    /** Set FLAG of FILENAME.  ID is its staged blob, if FLAG is ADDED. */
+    private void setFlag(String fileName, int flag, String id) {
+        Entry entry = _entries.get(fileName);
+        int flags = entry == null ? flag : entry._flags | flag;
+        String staged = flag == ADDED ? id
+            : entry == null ? null : entry._id;
+        put(fileName, flags, staged);
+    }
+
+    /** Clear FLAG of FILENAME. */
+    private void clearFlag(String fileName, int flag) {
+        Entry entry = _entries.get(fileName);
+        if (entry != null && (entry._flags & flag) != 0) {
+            put(fileName, entry._flags & ~flag, entry._id);
+        }
+    }
+
+    /** Make FLAGS and staged blob ID the state of FILENAME, dropping its
+     *  entry if FLAGS is 0. */
+    private void put(String fileName, int flags, String id) {
+        if (flags == 0) {
+            _entries.remove(fileName);
+        } else {
+            _entries.put(fileName,
+                         Entry.of(flags, (flags & ADDED) != 0 ? id : null));
+        }
+        _changed.add(fileName);
+    }
+
+    /** Return the files with FLAG set, each mapped to its staged blob
+     *  if STAGED, and otherwise to "". */
+    private HashMap<String, String> withFlag(int flag, boolean staged) {
+        HashMap<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Entry> kv : _entries.entrySet()) {
+            if ((kv.getValue()._flags & flag) != 0) {
+                result.put(kv.getKey(), staged ? kv.getValue()._id : "");
+            }
+        }
+        return result;
     }
 
     /** Usage: java gitlet.Main add [file name]    .
@@ -58,26 +204,66 @@ public class Staging implements Serializable {
      * and exit without changing anything.
      */
     public void add(String fileName, Commit commit) {
-        HashMap<String, String> allBlobs = getTrackedBlobs();
         File file = Paths.get(Main.getWorkingDir(), fileName).toFile();
-        boolean modified;
-        String uid;
         String contents = Utils.readContentsAsString(file);
+        stage(fileName, contents,
+              Utils.sha1(contents.getBytes(StandardCharsets.UTF_8)));
+    }
 
+    /** Stage every file in FILENAMES as add does.  The files are read
+     *  and hashed in parallel; only those that differ from the tracked
+     *  version are kept in memory, and their blobs are then written
+     *  one after another. */
+    public void addAll(final List<String> fileNames) {
+        final HashMap<String, String> allBlobs = getTrackedBlobs();
+        final String[] uids = new String[fileNames.size()];
+        final String[] contents = new String[fileNames.size()];
+        IntStream.range(0, fileNames.size()).parallel().forEach(i -> {
+            String fileName = fileNames.get(i);
+            String text = Utils.readContentsAsString(
+                    Paths.get(Main.getWorkingDir(), fileName).toFile());
+            uids[i] = Utils.sha1(text.getBytes(StandardCharsets.UTF_8));
+            if (!uids[i].equals(allBlobs.get(fileName))
+                || has(fileName, REMOVED)) {
+                contents[i] = text;
+            }
+        });
+        for (int i = 0; i < uids.length; i += 1) {
+            if (contents[i] != null) {
+                stage(fileNames.get(i), contents[i], uids[i]);
+            }
+        }
+    }
 
-        if (!_removeStage.containsKey(fileName)) {
+    /** Stage for removal the tracked files that are not among the
+     *  WORKINGFILES, as add -A does. */
+    public void stageMissing(List<String> workingFiles) {
+        HashSet<String> present = new HashSet<>(workingFiles);
+        for (Map.Entry<String, String> kv: getTrackedBlobs().entrySet()) {
+            if (!present.contains(kv.getKey())) {
+                clearFlag(kv.getKey(), ADDED | MODIFIED | DELETED);
+                setFlag(kv.getKey(), REMOVED, null);
+            }
+        }
+    }
 
-            boolean tracked = allBlobs.containsKey(fileName);
-            if (tracked) {
-                modified = modified(fileName, contents, true);
-                if (!modified) {
+    /** Stage FILENAME, whose working version is CONTENTS with blob ID
+     *  UID.  The blob is written to the staging area unless it is
+     *  already stored or staged. */
+    private void stage(String fileName, String contents, String uid) {
+        HashMap<String, String> allBlobs = getTrackedBlobs();
+        File file = Paths.get(Main.getWorkingDir(), fileName).toFile();
+        if (!has(fileName, REMOVED)) {
+            if (allBlobs.containsKey(fileName)) {
+                if (uid.equals(allBlobs.get(fileName))) {
                     return;
                 }
-                _modifyTracked.put(fileName, "");
+                setFlag(fileName, MODIFIED, null);
+            }
+            if (!ObjectStore.contains(Main.getBlobPath(), uid)
+                && !ObjectStore.file(Main.getTempBlobPath(), uid).isFile()) {
+                Main.write(Main.getTempBlobPath(), uid, new Blob(contents));
             }
-            Blob blob = new Blob(fileName, contents);
-            Main.write(Main.getTempBlobPath(), blob.getUID(), blob);
-            uid = blob.getUID();
         } else {
             Utils.writeContents(file, contents);
             uid = allBlobs.get(fileName);
@@ -89,61 +275,86 @@ public class Staging implements Serializable {
     public void rm(String fileName, Commit commit) {
         HashMap<String, String> allTrackedBlobs = getTrackedBlobs();
         boolean tracked = allTrackedBlobs.containsKey(fileName);
-        boolean staged = _addStage.containsKey(fileName)
-                                 || _removeStage.containsKey(fileName);
+        boolean staged = has(fileName, ADDED | REMOVED);
         File file = Paths.get(Main.getWorkingDir(), fileName).toFile();
         if (tracked) {
             String uid = allTrackedBlobs.get(fileName);
-            _addStage.remove(fileName);
-            _removeStage.put(fileName, allTrackedBlobs.get(fileName));
-            _modifyTracked.remove(fileName);
-            _removeTracked.remove(fileName);
+            clearFlag(fileName, ADDED | MODIFIED | DELETED);
+            setFlag(fileName, REMOVED, null);
             Utils.restrictedDelete(file);
-            File f = Paths.get(Main.getTempBlobPath(), uid).toFile();
+            File f = ObjectStore.file(Main.getTempBlobPath(), uid);
             f.delete();
         } else if (staged) {
-            _addStage.remove(fileName);
-            if (!file.exists()) {
-                _removeStage.put(fileName, _addStage.get(fileName));
-            } else {
-                _untracked.put(fileName, _addStage.get(fileName));
-            }
+            clearFlag(fileName, ADDED);
+            setFlag(fileName, file.exists() ? UNTRACKED : REMOVED, null);
         } else {
             System.out.println("No reason to remove the file.");
         }
     }
 
-    /** handle status. */
-    public void status() {
-        String stagedInfo = printStaged();
-        String removedInfo = printRemoved();
-        String modifiedInfo = printModified();
-        String untrackedInfo = printUntracked();
-        untrackedInfo = untrackedInfo.trim();
-        String all =  stagedInfo + removedInfo
-                              + modifiedInfo + untrackedInfo;
-        System.out.println(all);
-    }
-
-    /** Return sorted string, given LIST. */
-    public String sort(ArrayList<String> list) {
-        for (int i = 0; i < list.size() - 1; i++) {
-            for (int j = i + 1; j < list.size(); j++) {
-                String file1 = list.get(i);
-                String file2 = list.get(j);
-                if (file1.compareTo(file2) > 0) {
-                    String temp = file2;
-                    list.set(j, file1);
-                    list.set(i, temp);
+    /** handle status, writing it to OUT.  Each section is gathered and
+     *  sorted once, then written line by line.  If RENAMES, files staged
+     *  for removal and staged as new are paired up as renames where they
+     *  are the same or alike (see Renames), and shown as
+     *  old -> new in a section of their own. */
+    public void status(PrintWriter out, boolean renames) {
+        Set<String> added = new HashSet<>(getAddStage().keySet());
+        Set<String> removed = new HashSet<>(getRemoveStage().keySet());
+        List<String> moves = new ArrayList<>();
+        if (renames) {
+            HashMap<String, String> index = getIndex();
+            HashMap<String, String> deleted = new HashMap<>();
+            HashMap<String, String> created = new HashMap<>();
+            TreeDiff.diff(getTrackedBlobs(), index, (name, ids) -> {
+                if (ids[1] == null) {
+                    deleted.put(name, ids[0]);
+                } else if (ids[0] == null) {
+                    created.put(name, ids[1]);
                 }
+            });
+            for (Map.Entry<String, String> kv
+                     : Renames.detect(deleted, created).entrySet()) {
+                moves.add(kv.getValue() + " -> " + kv.getKey());
+                added.remove(kv.getKey());
+                removed.remove(kv.getValue());
             }
         }
-        String files = "";
-        for (String fileName: list) {
-            files += (fileName + "\n");
+        printSection(out, "=== Staged Files ===", added, "");
+        out.println();
+        printSection(out, "=== Removed Files ===", removed, "");
+        out.println();
+        if (renames) {
+            printSection(out, "=== Renamed Files ===", moves, "");
+            out.println();
+        }
+
+        ArrayList<String> deleted = new ArrayList<>(getDeleted().keySet());
+        deleted.addAll(Main.getJustDeleted());
+        ArrayList<String> modified = new ArrayList<>(getModified().keySet());
+        modified.addAll(Main.getJustModified());
+        printSection(out, "=== Modifications Not Staged For Commit ===",
+                     deleted, " (deleted)");
+        printSection(out, null, modified, " (modified)");
+        out.println();
+
+        Set<String> untracked = update(getUntracked().keySet());
+        untracked.addAll(Main.getNewFiles());
+        printSection(out, "=== Untracked Files ===", untracked, "");
+    }
+
+    /** Write HEADER, unless it is null, to OUT, then each of FILENAMES
+     *  in order followed by SUFFIX. */
+    static void printSection(PrintWriter out, String header,
+                             Collection<String> fileNames, String suffix) {
+        if (header != null) {
+            out.println(header);
+        }
+        String[] sorted = fileNames.toArray(new String[0]);
+        Arrays.sort(sorted);
+        for (String fileName: sorted) {
+            out.print(fileName);
+            out.println(suffix);
         }
-        files += "\n";
-        return files;
     }
 
     /** Return updated untracked FILENAMES.
@@ -152,145 +363,34 @@ public class Staging implements Serializable {
      */
     public Set<String> update(Set<String> fileNames) {
         Set<String> intersection = new HashSet<>(fileNames);
-        Set<String> workingFiles = new HashSet<>(
-                Utils.plainFilenamesIn(Main.getWorkingDir()));
-        workingFiles.remove("commitsConfig.bin");
-        workingFiles.remove("stagingConfig.bin");
-        intersection.retainAll(workingFiles);
+        intersection.retainAll(Main.getWorkingFiles());
+        intersection.remove("commitsConfig.bin");
+        intersection.remove("stagingConfig.bin");
         return intersection;
     }
 
-    /** return String. */
-    public String printUntracked() {
-        Set<String> fileNames =
-                getUntracked().keySet();
-        fileNames = update(fileNames);
-        fileNames.addAll(Main.getNewFiles());
-        String header = "=== Untracked Files ===" + "\n";
-        ArrayList<String> unsorted = new ArrayList<>(fileNames);
-        header += sort(unsorted);
-        return header;
-    }
-
-    /** Return sorted strings, given LIST. */
-    public ArrayList<String> sortModified(ArrayList<String> list) {
-        for (int i = 0; i < list.size() - 1; i++) {
-            for (int j = i + 1; j < list.size(); j++) {
-                String file1 = list.get(i);
-                String file2 = list.get(j);
-                if (file1.compareTo(file2) > 0) {
-                    String temp = file2;
-                    list.set(j, file1);
-                    list.set(i, temp);
-                }
-            }
-        }
-        return list;
-    }
-
-    /** Return print modified string. */
-    public String printModified() {
-        Set<String> modified =
-                getModified().keySet();
-        Set<String> deleted =
-                getDeleted().keySet();
-
-        String header = "=== Modifications Not Staged For Commit ===" + "\n";
-
-        ArrayList<String> unsorted = new ArrayList<>(deleted);
-        HashSet<String> justDeleted = Main.getJustDeleted();
-        if (!justDeleted.isEmpty()) {
-            unsorted.addAll(justDeleted);
-        }
-
-        ArrayList<String> files = sortModified(unsorted);
-
-        for (String fileName: files) {
-            header += (fileName + " (deleted)" + "\n");
-        }
-
-        unsorted = new ArrayList<>(modified);
-
-        HashSet<String> toCheck = Main.getJustModified();
-        if (!toCheck.isEmpty()) {
-            unsorted.addAll(toCheck);
-        }
-
-        files = sortModified(unsorted);
-
-        for (String fileName: files) {
-            header += (fileName + " (modified)" + "\n");
-        }
-        header += "\n";
-        return header;
-    }
-
-    /** return removed string. */
-    public String printRemoved() {
-        Set<String> fileNames =
-                getRemoveStage().keySet();
-        String header = "=== Removed Files ===" + "\n";
-        ArrayList<String> unsorted = new ArrayList<>(fileNames);
-        header += sort(unsorted);
-        return header;
-    }
-
-    /** return staged string. */
-    public String printStaged() {
-        Set<String> fileNames =
-                getAddStage().keySet();
-        String header = "=== Staged Files ===" + "\n";
-        ArrayList<String> unsorted = new ArrayList<>(fileNames);
-        header += sort(unsorted);
-        return header;
-    }
     /** a FILENAME with UID could have 4 stages.
      * we need to update them accordingly after a staging occurs
-     *  1. staged as removal, then remove this record from _removeStage
-     *  2. tracked but was removed, then remove this record from _removeTracked
-     *     and put it into removeStage for further operations.
-     *  3. tracked but was modified, removed this record from _modifyTracked
-     *      then put it into _addStage for further operations.
-     *  4. not tracked at all, remove this from _untracked
-     *     and put it into _addStage for further operations.
+     *  1. staged as removal, then clear its REMOVED flag.
+     *  2. tracked but was removed, then clear DELETED
+     *     and set REMOVED for further operations.
+     *  3. tracked but was modified, clear MODIFIED
+     *      then set ADDED for further operations.
+     *  4. not tracked at all, clear UNTRACKED
+     *     and set ADDED for further operations.
      */
     public void updateStage(String fileName, String uid) {
-        boolean stagedAsRemoved = _removeStage.containsKey(fileName);
-        boolean trackedDel = _removeTracked.containsKey(fileName);
-        boolean trackedModified = _modifyTracked.containsKey(fileName);
-        if (trackedDel) {
-            _removeTracked.remove(fileName);
-            _removeStage.put(fileName, uid);
-        } else if (trackedModified) {
-            _modifyTracked.remove(fileName);
-            _addStage.put(fileName, uid);
-        } else if (stagedAsRemoved) {
-            _removeStage.remove(fileName);
+        if (has(fileName, DELETED)) {
+            clearFlag(fileName, DELETED);
+            setFlag(fileName, REMOVED, null);
+        } else if (has(fileName, MODIFIED)) {
+            clearFlag(fileName, MODIFIED);
+            setFlag(fileName, ADDED, uid);
+        } else if (has(fileName, REMOVED)) {
+            clearFlag(fileName, REMOVED);
         } else {
-            _untracked.remove(fileName);
-            _addStage.put(fileName, uid);
-        }
-    }
-
-    /** post merge update.
-     * given UPDATEBLOBS, RMBLOBS, CONFLICTS
-     * @param updateBlobs updated blobs
-     * @param rmBlobs removed blobs
-     * @param conflicts conflicts
-     */
-    public void mergeUpdate(HashMap<String, String> updateBlobs,
-                            HashMap<String, String> rmBlobs,
-                            HashMap<String, String> conflicts) {
-        for (String fileName: updateBlobs.keySet()) {
-            add(fileName, Main.getAllCommits().getCurrentCommit());
-        }
-
-        for (String fileName: rmBlobs.keySet()) {
-            _removeStage.put(fileName, rmBlobs.get(fileName));
-        }
-
-        for (String fileName: conflicts.keySet()) {
-            _modifyTracked.put(fileName, null);
+            clearFlag(fileName, UNTRACKED);
+            setFlag(fileName, ADDED, uid);
         }
     }
 
@@ -306,72 +406,91 @@ public class Staging implements Serializable {
 
             if (getTrackedBlobs().containsKey(fileName)
                 && modified(fileName, contents, true)) {
-                _modifyTracked.put(fileName, "");
+                setFlag(fileName, MODIFIED, null);
             } else if (((!getTrackedBlobs().containsKey(fileName))
-                        && getAddStage().containsKey(fileName)
+                        && has(fileName, ADDED)
                         && modified(fileName, contents, false))
                         || (!getTrackedBlobs().containsKey(fileName)
-                        && !getAddStage().containsKey(fileName))) {
-                _untracked.put(fileName, "");
+                        && !has(fileName, ADDED))) {
+                setFlag(fileName, UNTRACKED, null);
             }
         }
 
-        for (String fileName: _untracked.keySet()) {
+        for (String fileName: withFlag(UNTRACKED, false).keySet()) {
             File f = Paths.get(Main.getWorkingDir(), fileName).toFile();
             if (!f.exists()) {
-                _untracked.remove(fileName);
+                clearFlag(fileName, UNTRACKED);
             }
         }
 
         for (String fileName: getTrackedBlobs().keySet()) {
             File f = Paths.get(Main.getWorkingDir(), fileName).toFile();
             if (!f.exists()) {
-                _removeStage.put(fileName, getTrackedBlobs().get(fileName));
+                setFlag(fileName, REMOVED, null);
             }
         }
 
     }
-    /** Return _ADDSTAGE. */
+    /** Return the files staged for addition and their staged blobs. */
     public HashMap<String, String> getAddStage() {
-        return _addStage;
+        return withFlag(ADDED, true);
     }
 
-    /** Return _REMOVESTAGE. */
+    /** Return the files staged for removal and their tracked blobs. */
     public HashMap<String, String> getRemoveStage() {
-        return _removeStage;
+        HashMap<String, String> result = withFlag(REMOVED, false);
+        for (Map.Entry<String, String> kv : result.entrySet()) {
+            kv.setValue(getTrackedBlobs().get(kv.getKey()));
+        }
+        return result;
+    }
+
+    /** Return the files the next commit would track and their blobs:
+     *  those of the head commit, with the staged changes applied. */
+    public HashMap<String, String> getIndex() {
+        HashMap<String, String> result = new HashMap<>(getTrackedBlobs());
+        result.putAll(getAddStage());
+        result.keySet().removeAll(getRemoveStage().keySet());
+        return result;
     }
 
     /** Update my blobs to be the blobs of newest COMMIT. */
     public void setBlobs(Commit commit) {
-        _trackedBlobs = commit.getAllBlobs();
+        _head = commit.getUID();
+        _tracked = commit.getAllBlobs();
+        _changed.add("");
     }
 
     /** Clear the staging area. */
     public void clearAll() {
-        _modifyTracked.clear();
-        _removeTracked.clear();
-        _addStage.clear();
-        _removeStage.clear();
+        for (String fileName: new ArrayList<>(_entries.keySet())) {
+            clearFlag(fileName, ADDED | REMOVED | MODIFIED | DELETED);
+        }
     }
 
-    /** return Tracked files. */
+    /** return Tracked files: those of the head commit. */
     public HashMap<String, String> getTrackedBlobs() {
-        return _trackedBlobs;
+        if (_tracked == null) {
+            _tracked = _head.isEmpty() ? new HashMap<>()
+                : ((Commit) Main.read(Main.getCommitPath(), _head))
+                .getAllBlobs();
+        }
+        return _tracked;
     }
 
     /** return untracked files. */
     public HashMap<String, String> getUntracked() {
-        return _untracked;
+        return withFlag(UNTRACKED, false);
     }
 
-    /** return removed blobs. */
+    /** return modified tracked files. */
     public HashMap<String, String> getModified() {
-        return _modifyTracked;
+        return withFlag(MODIFIED, false);
     }
 
-    /** return removed tracked blobs. */
+    /** return deleted tracked files. */
     public HashMap<String, String> getDeleted() {
-        return _removeTracked;
+        return withFlag(DELETED, false);
     }
 
     /** Return true if the FILENAME's CONTENT has been modified.
@@ -396,8 +515,11 @@ public class Staging implements Serializable {
                     getTrackedBlobs().get(fileName));
             contents = blob.getContents();
         } else {
-            blob = (Blob) Main.read(Main.getTempBlobPath(),
-                    getAddStage().get(fileName));
+            String uid = _entries.get(fileName)._id;
+            boolean staged =
+                ObjectStore.file(Main.getTempBlobPath(), uid).isFile();
+            blob = (Blob) Main.read(staged ? Main.getTempBlobPath()
+                                    : Main.getBlobPath(), uid);
             contents = blob.getContents();
         }
         return contents;
@@ -0,0 +1,315 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** The staging area on disk: .gitlet/index, a table of entries sorted
+ *  by file name and read through a memory map, and .gitlet/index.journal,
+ *  the entries changed since the index was written, appended run by run.
+ *
+ *  The index holds
+ *      int    MAGIC
+ *      int    generation
+ *      20     ID of the commit whose files are tracked, or zeros
+ *      int    number of entries
+ *      each entry, in name order:
+ *          short  length of the name, then the name in UTF-8
+ *          byte   flag bits (see Staging)
+ *          20     ID of the staged blob, or zeros
+ *      20     SHA-1 of all of the above
+ *  The journal holds JOURNAL_MAGIC and the generation of the index it
+ *  belongs to, then records:  an int length, an entry as above and the
+ *  CRC-32 of the entry.  An entry with no flags drops the file, and one
+ *  with an empty name sets the tracked commit.  A journal from another
+ *  generation is ignored, and a record cut short by a crash ends it.
+ *  Once the journal would outgrow a quarter of the index, the index is
+ *  rewritten under the next generation instead.
+ *  @author Yuan Sun
+ */
+class StagingIndex {
+
+    /** Name of the index file. */
+    static final String INDEX = "index";
+    /** Name of the journal file. */
+    static final String JOURNAL = "index.journal";
+    /** Fewest bytes the journal may grow to before a rewrite. */
+    static final int MIN_JOURNAL = 1 << 16;
+    /** First int of an index. */
+    private static final int MAGIC = 0x47494458;
+    /** First int of a journal. */
+    private static final int JOURNAL_MAGIC = 0x474a524e;
+    /** Bytes of a binary object ID. */
+    private static final int ID_BYTES = 20;
+    /** Bytes of the journal header. */
+    private static final int JOURNAL_HEADER = 8;
+
+    /** The index file. */
+    private final File _index;
+    /** The journal file. */
+    private final File _journal;
+    /** Generation of the index read, or -1 if there was none. */
+    private int _generation = -1;
+    /** Bytes in the index read. */
+    private long _indexBytes;
+    /** Bytes of the journal that belong to the index, or 0 if it must be
+     *  started afresh. */
+    private long _journalBytes;
+
+    /** The index kept in gitlet directory DIR. */
+    StagingIndex(String dir) {
+        _index = Utils.join(dir, INDEX);
+        _journal = Utils.join(dir, JOURNAL);
+    }
+
+    /** Return true iff the index file exists. */
+    boolean exists() {
+        return _index.isFile();
+    }
+
+    /** Read the index and its journal into ENTRIES and return the ID of
+     *  the tracked commit, or "" if none is recorded. */
+    String read(TreeMap<String, Staging.Entry> entries) {
+        String head = "";
+        if (!exists()) {
+            return head;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_index, "r")) {
+            _indexBytes = file.length();
+            MappedByteBuffer map = file.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, 0, _indexBytes);
+            if (_indexBytes < 2 * ID_BYTES + 12 || map.getInt(0) != MAGIC
+                || !checksumMatches(map)) {
+                throw Utils.error("Staging index is corrupt.");
+            }
+            _generation = map.getInt(4);
+            map.position(8);
+            String id = readId(map);
+            head = id == null ? "" : id;
+            int count = map.getInt();
+            for (int i = 0; i < count; i += 1) {
+                readEntry(map, entries);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read staging index.");
+        }
+        String journalHead = replay(entries);
+        return journalHead != null ? journalHead : head;
+    }
+
+    /** Apply the journal records to ENTRIES.  Return the last tracked
+     *  commit they set, or null if they set none. */
+    private String replay(TreeMap<String, Staging.Entry> entries) {
+        _journalBytes = 0;
+        if (!_journal.isFile()) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_journal));
+        if (buf.remaining() < JOURNAL_HEADER
+            || buf.getInt() != JOURNAL_MAGIC
+            || buf.getInt() != _generation) {
+            return null;
+        }
+        String head = null;
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= 4) {
+            int start = buf.position();
+            int length = buf.getInt();
+            if (length < 0 || buf.remaining() < length + 4) {
+                buf.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(buf.array(), buf.position(), length);
+            ByteBuffer record = ByteBuffer.wrap(buf.array(),
+                                                buf.position(), length);
+            buf.position(buf.position() + length);
+            if ((int) crc.getValue() != buf.getInt()) {
+                buf.position(start);
+                break;
+            }
+            String name = readEntry(record, entries);
+            if (name.isEmpty()) {
+                head = entries.remove("")._id;
+            }
+        }
+        _journalBytes = buf.position();
+        return head;
+    }
+
+    /** Record the staging area, whose tracked commit is HEAD and whose
+     *  entries are ENTRIES.  CHANGED names the entries that changed since
+     *  it was read, with "" standing for HEAD. */
+    void write(String head, TreeMap<String, Staging.Entry> entries,
+               Set<String> changed) {
+        if (changed.isEmpty() && exists()) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        if (exists() && _generation >= 0) {
+            DataOutputStream out = new DataOutputStream(records);
+            CRC32 crc = new CRC32();
+            try {
+                for (String name : changed) {
+                    byte[] entry = name.isEmpty()
+                        ? entry("", Staging.Entry.of(1, head))
+                        : entry(name, entries.get(name));
+                    crc.reset();
+                    crc.update(entry);
+                    out.writeInt(entry.length);
+                    out.write(entry);
+                    out.writeInt((int) crc.getValue());
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            long limit = Math.max(MIN_JOURNAL, _indexBytes / 4);
+            if (Math.max(_journalBytes, JOURNAL_HEADER) + records.size()
+                <= limit) {
+                append(records.toByteArray());
+                return;
+            }
+        }
+        rewrite(head, entries);
+    }
+
+    /** Append RECORDS to the journal, starting it if need be. */
+    private void append(byte[] records) {
+        try {
+            if (_journalBytes == 0) {
+                ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER);
+                header.putInt(JOURNAL_MAGIC).putInt(_generation);
+                Utils.writeContents(_journal, header.array());
+                _journalBytes = JOURNAL_HEADER;
+            } else if (_journal.length() != _journalBytes) {
+                try (RandomAccessFile file =
+                         new RandomAccessFile(_journal, "rw")) {
+                    file.setLength(_journalBytes);
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(_journal, true)) {
+                out.write(records);
+            }
+            _journalBytes += records.length;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the whole index anew, under the next generation, for HEAD
+     *  and ENTRIES, and discard the journal. */
+    private void rewrite(String head, TreeMap<String, Staging.Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int generation = _generation + 1;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(generation);
+            out.write(idBytes(head));
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Staging.Entry> kv : entries.entrySet()) {
+                out.write(entry(kv.getKey(), kv.getValue()));
+            }
+            out.write(sha1(ByteBuffer.wrap(bytes.toByteArray())));
+            File tmp = File.createTempFile("index", ".tmp",
+                                           _index.getParentFile());
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Files.move(tmp.toPath(), _index.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _journal.delete();
+        _generation = generation;
+        _indexBytes = bytes.size();
+        _journalBytes = 0;
+    }
+
+    /** Return ENTRY for file NAME in its encoded form. */
+    private static byte[] entry(String name, Staging.Entry entry) {
+        byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(2 + utf.length + 1 + ID_BYTES);
+        buf.putShort((short) utf.length).put(utf);
+        if (entry == null) {
+            buf.put((byte) 0).put(new byte[ID_BYTES]);
+        } else {
+            buf.put((byte) entry._flags).put(idBytes(entry._id));
+        }
+        return buf.array();
+    }
+
+    /** Read an entry from BUF into ENTRIES, dropping it from them if it
+     *  has no flags, and return its name. */
+    private static String readEntry(ByteBuffer buf,
+                                    TreeMap<String, Staging.Entry> entries) {
+        byte[] utf = new byte[buf.getShort() & 0xffff];
+        buf.get(utf);
+        String name = new String(utf, StandardCharsets.UTF_8);
+        int flags = buf.get() & 0xff;
+        String id = readId(buf);
+        if (flags == 0) {
+            entries.remove(name);
+        } else {
+            entries.put(name, Staging.Entry.of(flags, id));
+        }
+        return name;
+    }
+
+    /** Return the binary form of ID, or zeros if it is null or empty. */
+    private static byte[] idBytes(String id) {
+        if (id == null || id.isEmpty()) {
+            return new byte[ID_BYTES];
+        }
+        return Pack.fromHex(id);
+    }
+
+    /** Read a binary ID from BUF; return it in hex, or null if zero. */
+    private static String readId(ByteBuffer buf) {
+        byte[] id = new byte[ID_BYTES];
+        buf.get(id);
+        if (Arrays.equals(id, new byte[ID_BYTES])) {
+            return null;
+        }
+        return Pack.toHex(id);
+    }
+
+    /** Return true iff the last ID_BYTES of MAP are the SHA-1 of the
+     *  rest. */
+    private static boolean checksumMatches(MappedByteBuffer map) {
+        ByteBuffer body = map.duplicate();
+        body.limit(map.capacity() - ID_BYTES);
+        byte[] stored = new byte[ID_BYTES];
+        ByteBuffer tail = map.duplicate();
+        tail.position(map.capacity() - ID_BYTES);
+        tail.get(stored);
+        return Arrays.equals(stored, sha1(body));
+    }
+
+    /** Return the SHA-1 of the remaining bytes of BUF. */
+    private static byte[] sha1(ByteBuffer buf) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(buf);
+            return md.digest();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
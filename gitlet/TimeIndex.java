@@ -0,0 +1,305 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commits of a repository sorted by commit time, so that the
+ *  commits made in a range of times are found by binary search rather
+ *  than by reading every commit.
+ *
+ *  The index is kept in a gitlet directory as times.idx, read through a
+ *  memory map, and times.journal, to which new commits are appended.
+ *  Once the journal holds JOURNAL_LIMIT commits the two are merged into
+ *  a new times.idx.  A repository without the index, or whose index
+ *  cannot be read, has it built from its commits on first use.  Indexing
+ *  never fails a command:  an index that cannot be kept up is discarded,
+ *  to be built again.  times.idx holds
+ *      int    MAGIC
+ *      int    number of entries
+ *      each entry, by time and then ID:
+ *          long   commit time, in milliseconds since the epoch
+ *          20     commit ID
+ *  and the journal holds entries alone, in the order of the commits.
+ *  An entry cut short by a crash ends the journal.
+ *  @author Yuan Sun
+ */
+class TimeIndex {
+
+    /** Name of the index file. */
+    static final String INDEX = "times.idx";
+    /** Name of the journal file. */
+    static final String JOURNAL = "times.journal";
+    /** Commits the journal may hold before it is merged into the index. */
+    static final int JOURNAL_LIMIT = 256;
+    /** First int of an index. */
+    private static final int MAGIC = 0x4754494d;
+    /** Bytes of the index header. */
+    private static final int HEADER = 8;
+    /** Bytes of a binary object ID. */
+    private static final int ID_BYTES = 20;
+    /** Bytes of an entry. */
+    private static final int ENTRY = 8 + ID_BYTES;
+
+    /** Open indexes, by gitlet directory. */
+    private static final HashMap<String, TimeIndex> OPEN = new HashMap<>();
+
+    /** The gitlet directory the index belongs to. */
+    private final String _dir;
+    /** The mapped entries of times.idx. */
+    private ByteBuffer _map;
+    /** Number of entries in _map. */
+    private int _count;
+    /** The entries of the journal, sorted. */
+    private final List<Entry> _journal = new ArrayList<>();
+
+    /** A commit and its time. */
+    private static final class Entry {
+        /** Commit time, in milliseconds since the epoch. */
+        private final long _millis;
+        /** Commit ID. */
+        private final String _id;
+
+        /** The commit ID made at MILLIS. */
+        Entry(long millis, String id) {
+            _millis = millis;
+            _id = id;
+        }
+    }
+
+    /** Orders entries by time and then by ID. */
+    private static final Comparator<Entry> ORDER =
+        Comparator.comparingLong((Entry e) -> e._millis)
+        .thenComparing(e -> e._id);
+
+    /** The index of gitlet directory DIR, not read yet. */
+    private TimeIndex(String dir) {
+        _dir = dir;
+    }
+
+    /** Return the time index of gitlet directory DIR, whose commits are
+     *  in COMMITDIR, building it if there is none or it cannot be
+     *  read. */
+    static TimeIndex open(String dir, String commitDir) {
+        TimeIndex index = OPEN.get(dir);
+        if (index != null) {
+            return index;
+        }
+        index = new TimeIndex(dir);
+        if (!Utils.join(dir, INDEX).isFile()) {
+            index.build(commitDir);
+        }
+        try {
+            index.map();
+        } catch (GitletException excp) {
+            index.build(commitDir);
+            index.map();
+        }
+        index.replay();
+        OPEN.put(dir, index);
+        return index;
+    }
+
+    /** Return the time index of this repository. */
+    static TimeIndex open() {
+        return open(Main.getGitPath(), Main.getCommitPath());
+    }
+
+    /** Index COMMIT, just written to COMMITDIR, in the index of gitlet
+     *  directory DIR.  A repository with no index yet is left alone; its
+     *  index will be built from the commits themselves, as it is if the
+     *  index cannot be kept. */
+    static void record(String dir, String commitDir, Commit commit) {
+        if (OPEN.containsKey(dir) || Utils.join(dir, INDEX).isFile()) {
+            try {
+                open(dir, commitDir).add(commit);
+            } catch (RuntimeException excp) {
+                discard(dir);
+            }
+        }
+    }
+
+    /** Discard the time index of gitlet directory DIR, to be built again
+     *  when next used. */
+    static void discard(String dir) {
+        OPEN.remove(dir);
+        Utils.join(dir, INDEX).delete();
+        Utils.join(dir, JOURNAL).delete();
+    }
+
+    /** Index COMMIT, recording it on disk.  A commit indexed already is
+     *  indexed again; range answers each ID once. */
+    void add(Commit commit) {
+        Entry entry = new Entry(commit.getMillis(), commit.getUID());
+        int pos = Collections.binarySearch(_journal, entry, ORDER);
+        if (pos >= 0) {
+            return;
+        }
+        _journal.add(-pos - 1, entry);
+        if (_journal.size() >= JOURNAL_LIMIT) {
+            List<Entry> all = new ArrayList<>(_count + _journal.size());
+            for (int i = 0; i < _count; i += 1) {
+                all.add(entry(i));
+            }
+            all.addAll(_journal);
+            Collections.sort(all, ORDER);
+            rewrite(all);
+            _journal.clear();
+            map();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(
+                 Utils.join(_dir, JOURNAL), true)) {
+            out.write(encode(entry).array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the IDs of the commits made from SINCE to UNTIL, in
+     *  milliseconds since the epoch, newest first. */
+    List<String> range(long since, long until) {
+        List<Entry> found = new ArrayList<>();
+        for (int i = firstAtOrAfter(since);
+             i < _count && _map.getLong(HEADER + i * ENTRY) <= until;
+             i += 1) {
+            found.add(entry(i));
+        }
+        for (Entry e : _journal) {
+            if (e._millis >= since && e._millis <= until) {
+                found.add(e);
+            }
+        }
+        Collections.sort(found, ORDER.reversed());
+        List<String> result = new ArrayList<>(found.size());
+        String last = null;
+        for (Entry e : found) {
+            if (!e._id.equals(last)) {
+                result.add(e._id);
+            }
+            last = e._id;
+        }
+        return result;
+    }
+
+    /** Return the position in times.idx of the first entry made at or
+     *  after MILLIS. */
+    private int firstAtOrAfter(long millis) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_map.getLong(HEADER + mid * ENTRY) < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return entry I of times.idx. */
+    private Entry entry(int i) {
+        ByteBuffer buf = _map.duplicate();
+        buf.position(HEADER + i * ENTRY);
+        long millis = buf.getLong();
+        byte[] id = new byte[ID_BYTES];
+        buf.get(id);
+        return new Entry(millis, Pack.toHex(id));
+    }
+
+    /** Return ENTRY in its encoded form. */
+    private static ByteBuffer encode(Entry entry) {
+        ByteBuffer buf = ByteBuffer.allocate(ENTRY);
+        buf.putLong(entry._millis).put(Pack.fromHex(entry._id));
+        return buf;
+    }
+
+    /** Map times.idx. */
+    private void map() {
+        try (RandomAccessFile file = new RandomAccessFile(
+                 Utils.join(_dir, INDEX), "r")) {
+            MappedByteBuffer map = file.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (file.length() < HEADER || map.getInt(0) != MAGIC
+                || file.length() != HEADER + (long) map.getInt(4) * ENTRY) {
+                throw Utils.error("Time index is corrupt.");
+            }
+            _map = map;
+            _count = map.getInt(4);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read time index.");
+        }
+    }
+
+    /** Read the journal, ignoring an entry cut short. */
+    private void replay() {
+        File journal = Utils.join(_dir, JOURNAL);
+        if (!journal.isFile()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(journal));
+        while (buf.remaining() >= ENTRY) {
+            long millis = buf.getLong();
+            byte[] id = new byte[ID_BYTES];
+            buf.get(id);
+            _journal.add(new Entry(millis, Pack.toHex(id)));
+        }
+        Collections.sort(_journal, ORDER);
+        if (buf.hasRemaining()) {
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                file.setLength(buf.position());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Write times.idx anew from the commits in COMMITDIR, discarding
+     *  the journal. */
+    private void build(String commitDir) {
+        Utils.join(_dir, JOURNAL).delete();
+        List<Entry> entries = new ArrayList<>();
+        for (String id : ObjectStore.ids(commitDir)) {
+            Commit commit = (Commit) Main.read(commitDir, id);
+            entries.add(new Entry(commit.getMillis(), id));
+        }
+        Collections.sort(entries, ORDER);
+        rewrite(entries);
+    }
+
+    /** Write times.idx anew with ENTRIES, which are sorted, and discard
+     *  the journal. */
+    private void rewrite(List<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+            HEADER + entries.size() * ENTRY);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.write(encode(e).array());
+            }
+            File tmp = File.createTempFile("times", ".tmp", new File(_dir));
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Files.move(tmp.toPath(), Utils.join(_dir, INDEX).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.join(_dir, JOURNAL).delete();
+    }
+}
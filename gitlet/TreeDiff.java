@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/** Differences between trees, each a map from file name to blob ID as a
+ *  commit holds it.  The names of the trees are sorted and walked in
+ *  step, as in a merge join, so that each name is looked at once however
+ *  many trees there are, and a name whose blob is the same in every tree
+ *  is passed over by ID without its blob being read.  Trees that are the
+ *  same map, or belong to the same commit, are passed over whole.
+ *  @author Yuan Sun
+ */
+class TreeDiff {
+
+    /** Receives the names whose blobs differ between trees. */
+    interface Visitor {
+        /** Called for NAME, where IDS[K] is its blob ID in tree K, or
+         *  null if tree K does not have it. */
+        void visit(String name, String[] ids);
+    }
+
+    /** Call VISITOR, in order of name, on each name added, removed or
+     *  modified from commit BEFORE to commit AFTER. */
+    static void diff(Commit before, Commit after, Visitor visitor) {
+        if (!before.getUID().equals(after.getUID())) {
+            diff(before.getAllBlobs(), after.getAllBlobs(), visitor);
+        }
+    }
+
+    /** Call VISITOR, in order of name, on each name added, removed or
+     *  modified from tree BEFORE to tree AFTER. */
+    static void diff(Map<String, String> before, Map<String, String> after,
+                     Visitor visitor) {
+        join(Arrays.asList(before, after), visitor);
+    }
+
+    /** Call VISITOR, in order of name, on each name of any of TREES whose
+     *  blob is not the same in all of them. */
+    static void join(List<? extends Map<String, String>> trees,
+                     Visitor visitor) {
+        int k = trees.size();
+        boolean same = true;
+        for (Map<String, String> tree : trees) {
+            same &= tree == trees.get(0);
+        }
+        if (same) {
+            return;
+        }
+        String[][] names = new String[k][];
+        int[] at = new int[k];
+        for (int t = 0; t < k; t += 1) {
+            names[t] = trees.get(t).keySet().toArray(new String[0]);
+            Arrays.sort(names[t]);
+        }
+        String[] ids = new String[k];
+        while (true) {
+            String name = null;
+            for (int t = 0; t < k; t += 1) {
+                if (at[t] < names[t].length
+                    && (name == null || names[t][at[t]].compareTo(name) < 0)) {
+                    name = names[t][at[t]];
+                }
+            }
+            if (name == null) {
+                return;
+            }
+            boolean changed = false;
+            for (int t = 0; t < k; t += 1) {
+                ids[t] = null;
+                if (at[t] < names[t].length && names[t][at[t]].equals(name)) {
+                    ids[t] = trees.get(t).get(name);
+                    at[t] += 1;
+                }
+                changed |= ids[t] == null || !ids[t].equals(ids[0]);
+            }
+            if (changed) {
+                visitor.visit(name, ids.clone());
+            }
+        }
+    }
+
+    /** Return the letter that diff --name-status shows for a file whose
+     *  blob was BEFORE and is AFTER, either of which may be null. */
+    static char status(String before, String after) {
+        if (before == null) {
+            return 'A';
+        } else if (after == null) {
+            return 'D';
+        } else {
+            return 'M';
+        }
+    }
+}
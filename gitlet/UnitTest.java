@@ -3,8 +3,24 @@ package gitlet;
 import org.junit.Test;
 import ucb.junit.textui;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -48,6 +64,245 @@ public class UnitTest {
         System.out.println("stop and check the fields");
     }
 
-}
+    /** An insertion near the front of a large file only disturbs the
+     *  chunks around it; the rest keep their boundaries. */
+    @Test
+    public void testChunkBoundariesSurviveInsert() {
+        byte[] data = new byte[Chunker.THRESHOLD];
+        new Random(61).nextBytes(data);
+        byte[] edited = new byte[data.length + 3];
+        System.arraycopy(data, 0, edited, 0, 1000);
+        System.arraycopy(data, 1000, edited, 1003, data.length - 1000);
+
+        List<Integer> before = Chunker.cutPoints(data);
+        List<Integer> after = Chunker.cutPoints(edited);
+        assertEquals(data.length, (int) before.get(before.size() - 1));
+        Set<Integer> shifted = new HashSet<>();
+        for (int end : after) {
+            shifted.add(end - 3);
+        }
+        int kept = 0;
+        for (int end : before) {
+            if (shifted.contains(end)) {
+                kept += 1;
+            }
+        }
+        assertTrue(kept >= before.size() - 2);
+    }
+
+    /** Every codec gives back what it was given, across block edges. */
+    @Test
+    public void testCodecsRoundTrip() throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(61);
+        while (text.length() < 3 * LzCodec.BLOCK_SIZE) {
+            text.append("line ").append(random.nextInt(100)).append('\n');
+        }
+        byte[] data = text.toString().getBytes();
+        for (Codec codec : Compression.codecs()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = Compression.wrap(bytes, codec, 6);
+            out.write(data);
+            out.close();
+            InputStream in = Compression.open(
+                new ByteArrayInputStream(bytes.toByteArray()));
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    /** A delta between two versions is small and rebuilds the target. */
+    @Test
+    public void testDeltaRoundTrip() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes();
+        text.insert(5000, "a new line\n").delete(100, 140);
+        byte[] target = text.toString().getBytes();
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 100);
+        assertArrayEquals(base, Delta.apply(target,
+                Delta.create(target, base)));
+    }
+
+    @Test
+    public void testMessageTerms() {
+        Set<String> terms = MessageIndex.terms("Fix ABC-123: null_ptr");
+        assertTrue(terms.contains("abc-123"));
+        assertTrue(terms.contains("abc"));
+        assertTrue(terms.contains("123"));
+        assertTrue(terms.contains("null_ptr"));
+        assertTrue(terms.contains("ptr"));
+        assertFalse(terms.contains("abc-123:"));
+        assertTrue(MessageIndex.terms(" -- ").isEmpty());
+    }
+
+    @Test
+    public void testDiffMatchesLongestCommonSubsequence() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int[] a = new int[random.nextInt(40)];
+            int[] b = new int[random.nextInt(40)];
+            for (int i = 0; i < a.length; i += 1) {
+                a[i] = random.nextInt(4);
+            }
+            for (int j = 0; j < b.length; j += 1) {
+                b[j] = random.nextInt(4);
+            }
+            int[][] lcs = new int[a.length + 1][b.length + 1];
+            for (int i = a.length - 1; i >= 0; i -= 1) {
+                for (int j = b.length - 1; j >= 0; j -= 1) {
+                    lcs[i][j] = a[i] == b[j] ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+            int[] match = Diff.match(a, b);
+            int matched = 0, last = -1;
+            for (int i = 0; i < a.length; i += 1) {
+                if (match[i] >= 0) {
+                    assertEquals(a[i], b[match[i]]);
+                    assertTrue(match[i] > last);
+                    last = match[i];
+                    matched += 1;
+                }
+            }
+            assertEquals(lcs[0][0], matched);
+        }
+    }
+
+    @Test
+    public void testHistogramMatchIsValid() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int[] a = new int[random.nextInt(60)];
+            int[] b = new int[random.nextInt(60)];
+            for (int i = 0; i < a.length; i += 1) {
+                a[i] = random.nextInt(8);
+            }
+            for (int j = 0; j < b.length; j += 1) {
+                b[j] = random.nextInt(8);
+            }
+            int[] match = Diff.histogram(a, b);
+            int last = -1;
+            for (int i = 0; i < a.length; i += 1) {
+                if (match[i] >= 0) {
+                    assertEquals(a[i], b[match[i]]);
+                    assertTrue(match[i] > last);
+                    last = match[i];
+                }
+            }
+        }
+    }
 
+    @Test
+    public void testTextMatchTrimsLikeNumberedMatch() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 200; trial += 1) {
+            StringBuilder a = new StringBuilder(), b = new StringBuilder();
+            for (int i = random.nextInt(30); i > 0; i -= 1) {
+                String line = "x" + random.nextInt(4)
+                    + (random.nextInt(8) == 0 ? "" : "\n");
+                a.append(line);
+                if (random.nextInt(4) > 0) {
+                    b.append(line);
+                }
+                if (random.nextInt(6) == 0) {
+                    b.append("y").append(random.nextInt(4)).append("\n");
+                }
+            }
+            Diff.Lines lines = new Diff.Lines();
+            int[] whole = Diff.match(lines.number(a.toString()),
+                                     lines.number(b.toString()));
+            int[] match = Diff.match(a.toString(), b.toString());
+            assertEquals(whole.length, match.length);
+            int[] bIds = lines.number(b.toString());
+            int[] aIds = lines.number(a.toString());
+            int matched = 0, wholeMatched = 0, last = -1;
+            for (int i = 0; i < match.length; i += 1) {
+                if (match[i] >= 0) {
+                    assertEquals(aIds[i], bIds[match[i]]);
+                    assertTrue(match[i] > last);
+                    last = match[i];
+                    matched += 1;
+                }
+                wholeMatched += whole[i] >= 0 ? 1 : 0;
+            }
+            assertEquals(wholeMatched, matched);
+        }
+    }
 
+    @Test
+    public void testBisectReachAcrossMerges() {
+        int[][] chain = {{}, {0}, {1}, {2}};
+        assertTrue(Arrays.equals(new int[] {1, 2, 3, 4},
+                                 Bisect.reach(chain)));
+        int[][] diamond = {{}, {0}, {0}, {1, 2}, {3}};
+        int[] reach = Bisect.reach(diamond);
+        assertTrue(Arrays.equals(new int[] {1, 2, 2, 4, 5}, reach));
+        boolean[] testable = {true, true, true, true, false};
+        assertEquals(1, Bisect.midpoint(reach, testable));
+        assertEquals(-1, Bisect.midpoint(reach, new boolean[5]));
+    }
+
+    @Test
+    public void testTreeDiffJoin() {
+        HashMap<String, String> a = new HashMap<>(), b = new HashMap<>();
+        a.put("same", "1");
+        b.put("same", "1");
+        a.put("gone", "2");
+        a.put("edit", "3");
+        b.put("edit", "4");
+        b.put("born", "5");
+        List<String> seen = new ArrayList<>();
+        TreeDiff.diff(a, b, (name, ids) ->
+            seen.add(TreeDiff.status(ids[0], ids[1]) + name));
+        assertEquals(Arrays.asList("Aborn", "Medit", "Dgone"), seen);
+        seen.clear();
+        TreeDiff.diff(a, a, (name, ids) -> seen.add(name));
+        assertTrue(seen.isEmpty());
+    }
+
+    @Test
+    public void testRenamesPairAlikeFiles() {
+        Random random = new Random(61);
+        TreeMap<String, long[]> old = new TreeMap<>();
+        TreeMap<String, long[]> neu = new TreeMap<>();
+        for (int f = 0; f < 50; f += 1) {
+            StringBuilder before = new StringBuilder();
+            StringBuilder after = new StringBuilder();
+            for (int i = 0; i < 100; i += 1) {
+                String line = "file " + f + " line " + random.nextInt() + "\n";
+                before.append(line);
+                after.append(i % 10 == 0 ? "edited " + line : line);
+            }
+            old.put("old" + f, Renames.sketch(before.toString()));
+            neu.put("new" + f, Renames.sketch(after.toString()));
+        }
+        TreeMap<String, String> pairs = Renames.pair(old, neu);
+        assertEquals(50, pairs.size());
+        for (int f = 0; f < 50; f += 1) {
+            assertEquals("old" + f, pairs.get("new" + f));
+        }
+        assertTrue(Renames.similarity(old.get("old0"), old.get("old0"))
+                   == 1.0);
+        assertTrue(Renames.similarity(old.get("old0"), old.get("old1"))
+                   < Renames.MIN_SCORE);
+    }
+
+    @Test
+    public void testLineMerge() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        StringWriter out = new StringWriter();
+        assertFalse(LineMerge.merge(base, "A\nb\nc\nd\ne\n",
+                                    "a\nb\nc\nd\nE\nf\n", out));
+        assertEquals("A\nb\nc\nd\nE\nf\n", out.toString());
+        out = new StringWriter();
+        assertTrue(LineMerge.merge(base, "a\nB\nc\nd\ne\n",
+                                   "a\nX\nc\nd\ne\n", out));
+        assertEquals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\n"
+                     + "c\nd\ne\n", out.toString());
+    }
+
+}